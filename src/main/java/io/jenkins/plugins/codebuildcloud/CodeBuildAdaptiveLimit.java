@@ -0,0 +1,95 @@
+package io.jenkins.plugins.codebuildcloud;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.codebuild.model.AccountLimitExceededException;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Additive increase, multiplicative decrease limit on how many agents a cloud
+ * may have launching at once. Halved whenever CodeBuild pushes back on a
+ * StartBuild, and grown by one for every limit's worth of successful
+ * StartBuilds - so bursts run at the highest rate the account sustains.
+ *
+ * Kept per cloud name, like {@link CodeBuildAgentRegistry}, so what it learned
+ * survives configuration saves.
+ */
+public class CodeBuildAdaptiveLimit {
+
+  private static final Logger LOGGER = Logger.getLogger(CodeBuildAdaptiveLimit.class.getName());
+
+  private static final int MIN_LIMIT = 1;
+  private static final double BACKOFF_RATIO = 0.5;
+
+  private static final ConcurrentMap<String, CodeBuildAdaptiveLimit> LIMITS = new ConcurrentHashMap<String, CodeBuildAdaptiveLimit>();
+
+  // Launches that were already in flight when the first push back arrived fail
+  // together - only back off once for them.
+  private static final long BACKOFF_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+  private final LongSupplier clock;
+  private double limit;
+  private long lastBackoff;
+  private boolean backedOff = false;
+
+  public CodeBuildAdaptiveLimit(int initialLimit) {
+    this(initialLimit, System::nanoTime);
+  }
+
+  // Tests supply their own clock
+  CodeBuildAdaptiveLimit(int initialLimit, @NonNull LongSupplier clock) {
+    this.limit = Math.max(MIN_LIMIT, initialLimit);
+    this.clock = clock;
+  }
+
+  @NonNull
+  static CodeBuildAdaptiveLimit forCloud(@NonNull String cloudName, int initialLimit) {
+    return LIMITS.computeIfAbsent(cloudName, n -> new CodeBuildAdaptiveLimit(initialLimit));
+  }
+
+  /**
+   * @param ceiling the static limit, the adaptive limit never exceeds it.
+   * @return how many launches may be in flight right now.
+   */
+  public synchronized int getLimit(int ceiling) {
+    return (int) Math.max(MIN_LIMIT, Math.min(ceiling, Math.floor(limit)));
+  }
+
+  public synchronized void onSuccess(int ceiling) {
+    limit = Math.min(Math.max(MIN_LIMIT, ceiling), limit + 1.0 / limit);
+  }
+
+  public synchronized void onPushback() {
+    long now = clock.getAsLong();
+    if (backedOff && now - lastBackoff < BACKOFF_WINDOW_NANOS) {
+      return;
+    }
+    backedOff = true;
+    lastBackoff = now;
+    limit = Math.max(MIN_LIMIT, limit * BACKOFF_RATIO);
+    LOGGER.info(String.format("CodeBuild pushed back on StartBuild, launch limit lowered to %s", (int) limit));
+  }
+
+  /**
+   * Whether CodeBuild rejected a call because of throttling or an account
+   * limit, as opposed to the call itself being wrong.
+   */
+  public static boolean isPushback(Throwable e) {
+    if (e instanceof AccountLimitExceededException) {
+      return true;
+    }
+    if (e instanceof AmazonServiceException) {
+      AmazonServiceException ase = (AmazonServiceException) e;
+      String code = ase.getErrorCode();
+      return ase.getStatusCode() == 429 || "ThrottlingException".equals(code) || "Throttling".equals(code)
+          || "TooManyRequestsException".equals(code) || "RequestLimitExceeded".equals(code);
+    }
+    return false;
+  }
+}
@@ -17,11 +17,18 @@ import hudson.slaves.ComputerLauncher;
 
 public class CodeBuildAgent extends AbstractCloudSlave {
 
+  // Null for agents restored from disk, see getAgentRegistry
   final transient CodeBuildCloud cloud;
+  // Persisted, registries are keyed by cloud name
+  private final String cloudName;
   private static final Logger LOGGER = Logger.getLogger(CodeBuildAgent.class.getName());
   private static final long serialVersionUID = 1; // SpotBugs
 
-  transient boolean terminated = false;
+  // Job this agent was provisioned for, if any - drives compute type sizing
+  private transient String jobKey;
+
+  // Compute type chosen when the agent was created - its executors depend on it
+  private transient String computeType;
 
   public CodeBuildAgent(String name, @NonNull CodeBuildCloud cloud, @NonNull ComputerLauncher launcher)
       throws Descriptor.FormException, IOException {
@@ -44,7 +51,33 @@ public class CodeBuildAgent extends AbstractCloudSlave {
 
     this.setNodeProperties(Collections.emptyList());
     this.cloud = cloud;
+    this.cloudName = cloud.name;
+
+  }
+
+  /**
+   * Registry of the cloud this agent was launched by. Also found for agents
+   * restored from disk, which have no cloud. Null only for agents saved before
+   * the cloud name was.
+   */
+  CodeBuildAgentRegistry getAgentRegistry() {
+    return cloudName == null ? null : CodeBuildAgentRegistry.forCloud(cloudName);
+  }
+
+  String getJobKey() {
+    return jobKey;
+  }
+
+  void setJobKey(String jobKey) {
+    this.jobKey = jobKey;
+  }
 
+  String getComputeType() {
+    return computeType;
+  }
+
+  void setComputeType(String computeType) {
+    this.computeType = computeType;
   }
 
   @Override
@@ -58,35 +91,59 @@ public class CodeBuildAgent extends AbstractCloudSlave {
     listener.getLogger().println("Terminating agent: " + getDisplayName());
     LOGGER.finest("Terminating agent: " + getDisplayName());
 
+    // Even if node still exists and not cleaned up yet - time to not count it since
+    // its on its way out.
+    CodeBuildAgentRegistry registry = getAgentRegistry();
+    if (registry != null) {
+      registry.transition(getNodeName(), CodeBuildAgentRegistry.State.TERMINATING);
+    }
+    try {
+      stopCodeBuildBuild();
+    } catch (Exception e) {
+      LOGGER.severe(String.format("Failed to stop build of agent: %s.  Exception: %s", getDisplayName(), e));
+    } finally {
+      // The node is removed from Jenkins right after this
+      if (registry != null) {
+        registry.remove(getNodeName());
+      }
+    }
+  }
+
+  private void stopCodeBuildBuild() {
     if (getLauncher() instanceof CodeBuildLauncher) {
       CodeBuildComputer comp = (CodeBuildComputer) getComputer();
       if (comp == null) {
-        terminated = true;
         return;
       }
 
       String buildId = comp.getBuildId();
       if (StringUtils.isBlank(buildId)) {
-        terminated = true;
         return;
       }
 
       LOGGER.finest("Terminating agent Step2: " + getDisplayName());
-      try {
-        if (comp.getCompletedWithoutErrors()) {
-          // Let the rest of the build process run within codebuild
-          // Do not call stop - let codebuild nateively end.
-          // See #https://github.com/jenkinsci/codebuild-cloud-plugin/issues/21
-        } else {
-          // Stop hard the build in codebuild. Saves jenkins admin money
-          cloud.getClient().stopBuild(buildId);
-        }
-      } catch (ResourceNotFoundException e) {
-        // this is fine. really.
-      } catch (Exception e) {
-        LOGGER.severe(String.format("Failed to stop build ID: %s.  Exception: %s", buildId, e));
+      if (comp.getCompletedWithoutErrors()) {
+        // Let the rest of the build process run within codebuild
+        // Do not call stop - let codebuild nateively end.
+        // See #https://github.com/jenkinsci/codebuild-cloud-plugin/issues/21
+        return;
       }
-      terminated = true;
+
+      if (cloud == null) {
+        // Restored from disk - no client to stop it with
+        return;
+      }
+
+      // Stop hard the build in codebuild. Saves jenkins admin money
+      // Asynchronous - the node can go away while CodeBuild stops the build
+      CodeBuildLaunchTarget target = comp.getLaunchTarget();
+      CodeBuildClientWrapper client = target == null ? cloud.getClient() : cloud.getClient(target);
+      client.stopBuildAsync(buildId).whenComplete((v, e) -> {
+        Throwable cause = CodeBuildClientWrapper.unwrap(e);
+        if (cause != null && !(cause instanceof ResourceNotFoundException)) { // not found is fine. really.
+          LOGGER.severe(String.format("Failed to stop build ID: %s.  Exception: %s", buildId, cause));
+        }
+      });
     }
   }
 }
@@ -0,0 +1,232 @@
+package io.jenkins.plugins.codebuildcloud;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang.StringUtils;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.Util;
+import hudson.model.UnprotectedRootAction;
+import hudson.remoting.Launcher;
+import hudson.remoting.Which;
+
+/**
+ * Serves what a CodeBuild build needs to start an agent: the controller's
+ * agent.jar and a launcher script. Files are served below a version made from
+ * their content hashes, so they can be cached forever, and come with an ETag
+ * and, if the client accepts it, gzip encoding.
+ *
+ * Agents find them through the JENKINS_CODEBUILD_AGENT_URL and
+ * JENKINS_CODEBUILD_LAUNCHER_URL environment variables. The hash of the jar is
+ * in JENKINS_CODEBUILD_AGENT_SHA256, so images that already have it can skip
+ * the download. Nothing here is secret, like /jnlpJars.
+ */
+@Extension
+public class CodeBuildAgentBundle implements UnprotectedRootAction {
+
+  static final String URL_NAME = "codebuild-agent";
+  public static final String AGENT_JAR = "agent.jar";
+  public static final String LAUNCHER = "jenkins-agent";
+
+  // Content hashed, so it never changes below the same URL
+  private static final String CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+  private static final class Content {
+    final byte[] bytes;
+    final byte[] gzipped;
+    final String sha256;
+    final String contentType;
+
+    Content(byte[] bytes, String contentType) throws IOException {
+      this.bytes = bytes;
+      this.gzipped = gzip(bytes);
+      this.sha256 = Util.toHexString(sha256(bytes));
+      this.contentType = contentType;
+    }
+  }
+
+  private volatile Map<String, Content> files;
+  private volatile String version;
+
+  @NonNull
+  public static CodeBuildAgentBundle get() {
+    return ExtensionList.lookupSingleton(CodeBuildAgentBundle.class);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String getIconFileName() {
+    return null;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String getDisplayName() {
+    return null;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String getUrlName() {
+    return URL_NAME;
+  }
+
+  // Read on first use - the jar only changes with Jenkins itself
+  private synchronized void load() throws IOException {
+    if (files != null) {
+      return;
+    }
+    Map<String, Content> m = new LinkedHashMap<String, Content>();
+    m.put(AGENT_JAR, new Content(Files.readAllBytes(Which.jarFile(Launcher.class).toPath()),
+        "application/java-archive"));
+    try (InputStream in = CodeBuildAgentBundle.class.getResourceAsStream("CodeBuildAgentBundle/" + LAUNCHER)) {
+      if (in == null) {
+        throw new IOException("Missing launcher script");
+      }
+      m.put(LAUNCHER, new Content(in.readAllBytes(), "text/x-shellscript"));
+    }
+
+    StringBuilder hashes = new StringBuilder();
+    for (Content f : m.values()) {
+      hashes.append(f.sha256);
+    }
+    version = Util.toHexString(sha256(hashes.toString().getBytes(StandardCharsets.US_ASCII))).substring(0, 16);
+    files = Collections.unmodifiableMap(m);
+  }
+
+  /** Changes whenever any of the files does. */
+  @NonNull
+  public String getVersion() throws IOException {
+    load();
+    return version;
+  }
+
+  /** Hex SHA-256 of one of the files. */
+  @NonNull
+  public String getSha256(@NonNull String file) throws IOException {
+    load();
+    return files.get(file).sha256;
+  }
+
+  /** Where one of the files is served, relative to the Jenkins root URL. */
+  @NonNull
+  public String getPath(@NonNull String file) throws IOException {
+    return URL_NAME + "/" + getVersion() + "/" + file;
+  }
+
+  public void doDynamic(StaplerRequest req, StaplerResponse rsp) throws IOException {
+    load();
+    String[] parts = StringUtils.strip(req.getRestOfPath(), "/").split("/");
+    if (parts.length != 2 || !files.containsKey(parts[1])) {
+      rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+    if (!parts[0].equals(version)) {
+      // Launched before Jenkins was upgraded - send it to what is served now
+      rsp.sendRedirect(HttpServletResponse.SC_FOUND, req.getContextPath() + "/" + getPath(parts[1]));
+      return;
+    }
+
+    Content file = files.get(parts[1]);
+    // Weak, since gzipped and plain are the same file
+    String etag = "W/\"" + file.sha256 + "\"";
+    rsp.setHeader("ETag", etag);
+    rsp.setHeader("Cache-Control", CACHE_CONTROL);
+    rsp.setHeader("Vary", "Accept-Encoding");
+    if (matches(req.getHeader("If-None-Match"), file.sha256)) {
+      rsp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+
+    boolean gzip = acceptsGzip(req.getHeader("Accept-Encoding"));
+    byte[] body = gzip ? file.gzipped : file.bytes;
+    rsp.setContentType(file.contentType);
+    if (gzip) {
+      rsp.setHeader("Content-Encoding", "gzip");
+    }
+    rsp.setContentLength(body.length);
+    if (!"HEAD".equals(req.getMethod())) {
+      rsp.getOutputStream().write(body);
+    }
+  }
+
+  /** Whether an If-None-Match header matches, compared weakly. */
+  static boolean matches(String ifNoneMatch, @NonNull String sha256) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    for (String tag : ifNoneMatch.split(",")) {
+      tag = tag.trim();
+      if (tag.equals("*")) {
+        return true;
+      }
+      if (tag.startsWith("W/")) {
+        tag = tag.substring(2);
+      }
+      if (tag.equals("\"" + sha256 + "\"")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  static boolean acceptsGzip(String acceptEncoding) {
+    if (acceptEncoding == null) {
+      return false;
+    }
+    for (String coding : acceptEncoding.split(",")) {
+      String[] params = coding.trim().split(";");
+      String name = params[0].trim().toLowerCase();
+      if (!name.equals("gzip") && !name.equals("x-gzip") && !name.equals("*")) {
+        continue;
+      }
+      boolean refused = false;
+      for (int i = 1; i < params.length; i++) {
+        String p = params[i].trim().replace(" ", "");
+        if (p.startsWith("q=")) {
+          try {
+            refused = Double.parseDouble(p.substring(2)) <= 0;
+          } catch (NumberFormatException e) {
+            refused = true;
+          }
+        }
+      }
+      if (!refused) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static byte[] gzip(byte[] bytes) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length);
+    try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+      gz.write(bytes);
+    }
+    return out.toByteArray();
+  }
+
+  private static byte[] sha256(byte[] bytes) {
+    try {
+      return MessageDigest.getInstance("SHA-256").digest(bytes);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,263 @@
+package io.jenkins.plugins.codebuildcloud;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Per-cloud bookkeeping of {@link CodeBuildAgent} lifecycle states. Kept up to
+ * date by the agent, computer, launcher and retention strategy as agents move
+ * through their lifecycle, so capacity checks in
+ * {@link CodeBuildCloud#provision} do not have to scan every node in Jenkins.
+ *
+ * Registries are keyed by cloud name rather than cloud instance. Saving the
+ * cloud configuration creates a new {@link CodeBuildCloud} object while the
+ * agents it already launched keep running.
+ */
+public class CodeBuildAgentRegistry {
+
+  private static final Logger LOGGER = Logger.getLogger(CodeBuildAgentRegistry.class.getName());
+
+  private static final ConcurrentMap<String, CodeBuildAgentRegistry> REGISTRIES = new ConcurrentHashMap<String, CodeBuildAgentRegistry>();
+
+  public enum State {
+    /** Added to Jenkins, CodeBuild build starting, agent not connected yet. */
+    PROVISIONING,
+    /** Connected and not running a task. */
+    IDLE,
+    /** Connected and running a task. */
+    BUSY,
+    /** On its way out. No longer counts towards capacity. */
+    TERMINATING
+  }
+
+  /**
+   * State of one agent, the launch target its build runs on, the label it was
+   * provisioned for, if known yet, how many executors it has and whether it was
+   * launched for the warm pool and has not run a task yet.
+   */
+  private static final class AgentInfo {
+    final State state;
+    final String target;
+    final String label;
+    final int executors;
+    final boolean warm;
+
+    AgentInfo(State state, String target, String label, int executors, boolean warm) {
+      this.state = state;
+      this.target = target;
+      this.label = label;
+      this.executors = executors;
+      this.warm = warm;
+    }
+
+    boolean isActive() {
+      return state != State.TERMINATING;
+    }
+  }
+
+  private final ConcurrentMap<String, AgentInfo> agents = new ConcurrentHashMap<String, AgentInfo>();
+  private final Map<State, AtomicInteger> counters = new EnumMap<State, AtomicInteger>(State.class);
+  private final ConcurrentMap<String, AtomicInteger> targetCounters = new ConcurrentHashMap<String, AtomicInteger>();
+  private final ConcurrentMap<String, AtomicInteger> labelCounters = new ConcurrentHashMap<String, AtomicInteger>();
+  private final AtomicInteger withoutTarget = new AtomicInteger();
+
+  // Until the first agent connects, assume a typical CodeBuild cold start
+  private static final long DEFAULT_COLD_START_MS = TimeUnit.MINUTES.toMillis(2);
+  // Weight of the newest cold start
+  private static final double COLD_START_ALPHA = 0.2;
+  private volatile long coldStartMs = -1;
+
+  private CodeBuildAgentRegistry() {
+    for (State s : State.values()) {
+      counters.put(s, new AtomicInteger());
+    }
+  }
+
+  @NonNull
+  static CodeBuildAgentRegistry forCloud(@NonNull String cloudName) {
+    return REGISTRIES.computeIfAbsent(cloudName, n -> new CodeBuildAgentRegistry());
+  }
+
+  /**
+   * Moves an agent to a new state, registering it if it is not known yet. An
+   * agent that is terminating never moves back to another state. A busy agent
+   * no longer belongs to the warm pool.
+   */
+  void transition(@NonNull String agentName, @NonNull State newState) {
+    agents.compute(agentName, (name, old) -> {
+      if (old != null && old.state == State.TERMINATING) {
+        return old;
+      }
+      AgentInfo updated = old == null ? new AgentInfo(newState, null, null, 1, false)
+          : new AgentInfo(newState, old.target, old.label, old.executors, old.warm && newState != State.BUSY);
+      update(old, updated);
+      LOGGER.finest(String.format("Agent '%s' moved from %s to %s", name, old == null ? null : old.state, newState));
+      return updated;
+    });
+  }
+
+  /** Records which launch target an agent's CodeBuild build runs on. */
+  void assignTarget(@NonNull String agentName, @NonNull CodeBuildLaunchTarget target) {
+    agents.computeIfPresent(agentName, (name, old) -> {
+      AgentInfo updated = new AgentInfo(old.state, target.getKey(), old.label, old.executors, old.warm);
+      update(old, updated);
+      return updated;
+    });
+  }
+
+  /** Records which label an agent was provisioned for. */
+  void assignLabel(@NonNull String agentName, @NonNull String label) {
+    agents.computeIfPresent(agentName, (name, old) -> {
+      AgentInfo updated = new AgentInfo(old.state, old.target, label, old.executors, old.warm);
+      update(old, updated);
+      return updated;
+    });
+  }
+
+  /** Records how many executors an agent has, 1 until then. */
+  void assignExecutors(@NonNull String agentName, int executors) {
+    agents.computeIfPresent(agentName,
+        (name, old) -> new AgentInfo(old.state, old.target, old.label, Math.max(1, executors), old.warm));
+  }
+
+  /** Records that an agent was launched for the warm pool rather than a job. */
+  void markWarm(@NonNull String agentName) {
+    agents.computeIfPresent(agentName,
+        (name, old) -> new AgentInfo(old.state, old.target, old.label, old.executors, old.state != State.BUSY));
+  }
+
+  /** Whether an agent was launched for the warm pool and has not run a task yet. */
+  boolean isWarm(@NonNull String agentName) {
+    AgentInfo info = agents.get(agentName);
+    return info != null && info.warm;
+  }
+
+  /** Forgets an agent once its node has been removed from Jenkins. */
+  void remove(@NonNull String agentName) {
+    agents.computeIfPresent(agentName, (name, old) -> {
+      update(old, null);
+      return null;
+    });
+  }
+
+  private void update(AgentInfo old, AgentInfo updated) {
+    if (old != null) {
+      counters.get(old.state).decrementAndGet();
+      if (old.isActive()) {
+        (old.target == null ? withoutTarget : groupCounter(targetCounters, old.target)).decrementAndGet();
+        groupCounter(labelCounters, old.label).decrementAndGet();
+      }
+    }
+    if (updated != null) {
+      counters.get(updated.state).incrementAndGet();
+      if (updated.isActive()) {
+        (updated.target == null ? withoutTarget : groupCounter(targetCounters, updated.target)).incrementAndGet();
+        groupCounter(labelCounters, updated.label).incrementAndGet();
+      }
+    }
+  }
+
+  private static AtomicInteger groupCounter(ConcurrentMap<String, AtomicInteger> groups, String group) {
+    if (group == null) {
+      return new AtomicInteger(); // Not assigned yet - counts nowhere
+    }
+    return groups.computeIfAbsent(group, t -> new AtomicInteger());
+  }
+
+  /** An agent took this long from launch to being connected. */
+  synchronized void recordColdStart(long ms) {
+    coldStartMs = coldStartMs < 0 ? ms : Math.round(COLD_START_ALPHA * ms + (1 - COLD_START_ALPHA) * coldStartMs);
+  }
+
+  /** Moving average of how long agents take from launch to being connected. */
+  long getColdStartMs() {
+    long c = coldStartMs;
+    return c < 0 ? DEFAULT_COLD_START_MS : c;
+  }
+
+  State getState(@NonNull String agentName) {
+    AgentInfo info = agents.get(agentName);
+    return info == null ? null : info.state;
+  }
+
+  /** Agents not terminating whose build runs on the given launch target. */
+  int countOnTarget(@NonNull CodeBuildLaunchTarget target) {
+    AtomicInteger c = targetCounters.get(target.getKey());
+    return c == null ? 0 : c.get();
+  }
+
+  /** Agents not terminating that have not been given a launch target yet. */
+  int countWithoutTarget() {
+    return withoutTarget.get();
+  }
+
+  /** Agents not terminating that were provisioned for the given label. */
+  int countOnLabel(@NonNull String label) {
+    AtomicInteger c = labelCounters.get(label);
+    return c == null ? 0 : c.get();
+  }
+
+  int count(@NonNull State state) {
+    return counters.get(state).get();
+  }
+
+  /** Agents still connecting to Jenkins. */
+  int countProvisioning() {
+    return count(State.PROVISIONING);
+  }
+
+  /**
+   * Executors of the agents still connecting to Jenkins, by the label they were
+   * provisioned for. Each will take a job waiting for that label.
+   */
+  @NonNull
+  Map<String, Integer> countProvisioningExecutorsByLabel() {
+    Map<String, Integer> executors = new HashMap<String, Integer>();
+    for (AgentInfo info : agents.values()) {
+      if (info.state == State.PROVISIONING && info.label != null) {
+        executors.merge(info.label, info.executors, Integer::sum);
+      }
+    }
+    return executors;
+  }
+
+  /**
+   * Agents in the given state that were launched for the warm pool and have not
+   * run a task yet. Agents launched for jobs and reused agents lingering after
+   * theirs do not count.
+   */
+  int countWarm(@NonNull State state) {
+    int count = 0;
+    for (AgentInfo info : agents.values()) {
+      if (info.warm && info.state == state) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /** Agents connected to Jenkins, idle or busy. */
+  int countOnline() {
+    return count(State.IDLE) + count(State.BUSY);
+  }
+
+  int countTerminating() {
+    return count(State.TERMINATING);
+  }
+
+  /**
+   * Agents that are running or about to run a CodeBuild build, which is what
+   * counts against maxAgents and the project's concurrent build limit.
+   */
+  int countProvisionedOrProvisioning() {
+    return countProvisioning() + countOnline();
+  }
+}
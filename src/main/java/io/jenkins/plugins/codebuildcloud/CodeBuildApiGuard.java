@@ -0,0 +1,259 @@
+package io.jenkins.plugins.codebuildcloud;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.retry.RetryUtils;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+
+/**
+ * Retries and a circuit breaker for the CodeBuild calls of one endpoint, that
+ * is one pair of credentials and region.
+ *
+ * Failed calls are retried with jittered exponential backoff while the error
+ * is worth retrying and the call's deadline allows. After
+ * {@link #FAILURE_THRESHOLD} calls in a row failed for good, the circuit opens
+ * and calls fail right away for {@link #OPEN_MS}. Then one call is let through
+ * to see whether the endpoint is back.
+ */
+public class CodeBuildApiGuard {
+
+  private static final Logger LOGGER = Logger.getLogger(CodeBuildApiGuard.class.getName());
+
+  static final long DEADLINE_MS = SystemProperties
+      .getLong(CodeBuildApiGuard.class.getName() + ".deadlineMs", TimeUnit.SECONDS.toMillis(20));
+
+  static final int MAX_ATTEMPTS = SystemProperties
+      .getInteger(CodeBuildApiGuard.class.getName() + ".maxAttempts", 4);
+
+  static final int FAILURE_THRESHOLD = 5;
+
+  static final long OPEN_MS = TimeUnit.SECONDS.toMillis(30);
+
+  private static final long TRANSIENT_BASE_MS = 100;
+  private static final long THROTTLE_BASE_MS = 500;
+  private static final long MAX_BACKOFF_MS = TimeUnit.SECONDS.toMillis(5);
+
+  /** How a failed call should be handled. */
+  public enum ErrorKind {
+    /** CodeBuild asks us to slow down - retry after a longer pause. */
+    THROTTLE,
+    /** Network trouble or a server side error - retry soon. */
+    TRANSIENT,
+    /** The call itself is wrong - retrying will not help. */
+    FATAL
+  }
+
+  /** Thrown instead of calling CodeBuild while the circuit is open. */
+  public static class CircuitOpenException extends AmazonClientException {
+    private static final long serialVersionUID = 1L;
+
+    public CircuitOpenException(String endpoint) {
+      super(String.format("CodeBuild calls to %s are suspended after repeated failures", endpoint));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isRetryable() {
+      return false;
+    }
+  }
+
+  private enum State {
+    CLOSED,
+    OPEN,
+    HALF_OPEN
+  }
+
+  private final String endpoint;
+  private final LongSupplier clock;
+  private final Supplier<ScheduledExecutorService> scheduler;
+
+  private State state = State.CLOSED;
+  private int consecutiveFailures;
+  private long openedAt;
+
+  public CodeBuildApiGuard(@NonNull String endpoint) {
+    this(endpoint, System::currentTimeMillis, Timer::get);
+  }
+
+  // Tests supply their own clock and scheduler
+  CodeBuildApiGuard(@NonNull String endpoint, @NonNull LongSupplier clock,
+      @NonNull Supplier<ScheduledExecutorService> scheduler) {
+    this.endpoint = endpoint;
+    this.clock = clock;
+    this.scheduler = scheduler;
+  }
+
+  @NonNull
+  public static ErrorKind classify(Throwable e) {
+    e = CodeBuildClientWrapper.unwrap(e);
+    if (CodeBuildAdaptiveLimit.isPushback(e)) {
+      return ErrorKind.THROTTLE;
+    }
+    if (e instanceof AmazonServiceException) {
+      AmazonServiceException ase = (AmazonServiceException) e;
+      if (RetryUtils.isThrottlingException(ase)) {
+        return ErrorKind.THROTTLE;
+      }
+      if (ase.getStatusCode() >= 500 || RetryUtils.isRetryableServiceException(ase)
+          || RetryUtils.isClockSkewError(ase)) {
+        return ErrorKind.TRANSIENT;
+      }
+      return ErrorKind.FATAL;
+    }
+    if (e instanceof AmazonClientException) {
+      return ((AmazonClientException) e).isRetryable() ? ErrorKind.TRANSIENT : ErrorKind.FATAL;
+    }
+    return e instanceof IOException ? ErrorKind.TRANSIENT : ErrorKind.FATAL;
+  }
+
+  /**
+   * Whether calls currently go through. False while the circuit is open, so
+   * callers can skip work that needs CodeBuild, and while the trial call is
+   * under way.
+   */
+  public synchronized boolean isAvailable() {
+    return state == State.CLOSED || (state == State.OPEN && clock.getAsLong() - openedAt >= OPEN_MS);
+  }
+
+  /**
+   * Runs an asynchronous call, retrying it as long as that makes sense.
+   *
+   * @param operation name of the call, for logging.
+   */
+  @NonNull
+  public <T> CompletableFuture<T> call(@NonNull String operation, @NonNull Supplier<CompletableFuture<T>> attempt) {
+    CompletableFuture<T> result = new CompletableFuture<T>();
+    attempt(operation, attempt, 1, clock.getAsLong() + DEADLINE_MS, result);
+    return result;
+  }
+
+  /**
+   * Same as {@link #call(String, Supplier)} for blocking calls. Waits on the
+   * calling thread between attempts.
+   */
+  public <T> T callSync(@NonNull String operation, @NonNull Supplier<T> attempt) {
+    long deadline = clock.getAsLong() + DEADLINE_MS;
+    for (int n = 1;; n++) {
+      checkCircuit();
+      try {
+        T res = attempt.get();
+        onSuccess();
+        return res;
+      } catch (RuntimeException e) {
+        long delay = retryDelay(operation, e, n, deadline);
+        if (delay < 0) {
+          throw e;
+        }
+        try {
+          Thread.sleep(delay);
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          throw e;
+        }
+      }
+    }
+  }
+
+  private <T> void attempt(String operation, Supplier<CompletableFuture<T>> attempt, int n, long deadline,
+      CompletableFuture<T> result) {
+    CompletableFuture<T> future;
+    try {
+      checkCircuit();
+      future = attempt.get();
+    } catch (RuntimeException e) {
+      future = CompletableFuture.failedFuture(e);
+    }
+    future.whenComplete((res, e) -> {
+      if (e == null) {
+        onSuccess();
+        result.complete(res);
+        return;
+      }
+      long delay = retryDelay(operation, e, n, deadline);
+      if (delay < 0) {
+        result.completeExceptionally(CodeBuildClientWrapper.unwrap(e));
+        return;
+      }
+      scheduler.get().schedule(() -> attempt(operation, attempt, n + 1, deadline, result), delay,
+          TimeUnit.MILLISECONDS);
+    });
+  }
+
+  private synchronized void checkCircuit() {
+    if (state == State.CLOSED) {
+      return;
+    }
+    if (state == State.OPEN && clock.getAsLong() - openedAt >= OPEN_MS) {
+      // This call is the trial, the others keep failing fast until it is done
+      state = State.HALF_OPEN;
+      return;
+    }
+    throw new CircuitOpenException(endpoint);
+  }
+
+  private synchronized void onSuccess() {
+    if (state != State.CLOSED) {
+      LOGGER.info(String.format("CodeBuild calls to %s work again", endpoint));
+    }
+    state = State.CLOSED;
+    consecutiveFailures = 0;
+  }
+
+  /**
+   * Accounts for a failed attempt.
+   *
+   * @return how long to wait before the next attempt, or -1 to give up.
+   */
+  private long retryDelay(String operation, Throwable e, int n, long deadline) {
+    Throwable cause = CodeBuildClientWrapper.unwrap(e);
+    if (cause instanceof CircuitOpenException) {
+      return -1;
+    }
+    ErrorKind kind = classify(cause);
+    if (kind == ErrorKind.FATAL) {
+      // The endpoint answered, it is the call that is wrong
+      onSuccess();
+      return -1;
+    }
+
+    long delay = backoff(kind, n);
+    if (n < MAX_ATTEMPTS && clock.getAsLong() + delay < deadline && isAvailable()) {
+      LOGGER.log(Level.FINE, String.format("%s to %s failed (%s), attempt %s, retrying in %sms", operation, endpoint,
+          kind, n, delay), cause);
+      return delay;
+    }
+    onFailure(operation, kind);
+    return -1;
+  }
+
+  private synchronized void onFailure(String operation, ErrorKind kind) {
+    consecutiveFailures++;
+    if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= FAILURE_THRESHOLD)) {
+      LOGGER.warning(String.format("%s to %s failed (%s), suspending CodeBuild calls for %ss", operation, endpoint,
+          kind, TimeUnit.MILLISECONDS.toSeconds(OPEN_MS)));
+      state = State.OPEN;
+      openedAt = clock.getAsLong();
+    }
+  }
+
+  // Full jitter, see tests
+  static long backoff(ErrorKind kind, int attempt) {
+    long base = kind == ErrorKind.THROTTLE ? THROTTLE_BASE_MS : TRANSIENT_BASE_MS;
+    long ceiling = Math.min(MAX_BACKOFF_MS, base << Math.min(attempt - 1, 20));
+    return ThreadLocalRandom.current().nextLong(ceiling + 1);
+  }
+}
@@ -0,0 +1,133 @@
+package io.jenkins.plugins.codebuildcloud;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.amazonaws.services.codebuild.model.Build;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import jenkins.util.Timer;
+
+/**
+ * Polls CodeBuild for the status of every build that a launcher is waiting on.
+ * There is one poller per {@link CodeBuildClientWrapper}, and it asks for all
+ * watched builds in BatchGetBuilds calls of up to {@link #MAX_IDS_PER_CALL} IDs
+ * instead of one call per launching agent. The batches are sent concurrently
+ * through the asynchronous client.
+ */
+public class CodeBuildBuildStatusPoller {
+
+  private static final Logger LOGGER = Logger.getLogger(CodeBuildBuildStatusPoller.class.getName());
+
+  // BatchGetBuilds limit
+  static final int MAX_IDS_PER_CALL = 100;
+  private static final long POLL_INTERVAL_MS = TimeUnit.SECONDS.toMillis(10);
+
+  /** Receives the build whenever its status or phase changes. */
+  public interface Listener {
+    void onBuildUpdate(@NonNull Build build);
+  }
+
+  private static class Watch {
+    final Listener listener;
+    String lastStatus;
+    String lastPhase;
+
+    Watch(Listener listener) {
+      this.listener = listener;
+    }
+  }
+
+  private final CodeBuildClientWrapper client;
+  private final ConcurrentMap<String, Watch> watches = new ConcurrentHashMap<String, Watch>();
+  private final AtomicBoolean polling = new AtomicBoolean();
+  private ScheduledFuture<?> task;
+
+  CodeBuildBuildStatusPoller(@NonNull CodeBuildClientWrapper client) {
+    this.client = client;
+  }
+
+  /** Starts delivering updates for a build until {@link #unwatch} is called. */
+  public synchronized void watch(@NonNull String buildId, @NonNull Listener listener) {
+    watches.put(buildId, new Watch(listener));
+    if (task == null) {
+      task = Timer.get().scheduleWithFixedDelay(this::poll, POLL_INTERVAL_MS, POLL_INTERVAL_MS,
+          TimeUnit.MILLISECONDS);
+    }
+  }
+
+  public void unwatch(@NonNull String buildId) {
+    watches.remove(buildId);
+  }
+
+  void poll() {
+    List<String> ids = new ArrayList<String>(watches.keySet());
+    if (ids.isEmpty()) {
+      stopIfIdle();
+      return;
+    }
+
+    // Skip this round if the previous one is still waiting on CodeBuild
+    if (!polling.compareAndSet(false, true)) {
+      return;
+    }
+
+    LOGGER.finest(String.format("Polling CodeBuild status of %s builds", ids.size()));
+    List<CompletableFuture<?>> calls = new ArrayList<CompletableFuture<?>>();
+    for (int i = 0; i < ids.size(); i += MAX_IDS_PER_CALL) {
+      List<String> batch = new ArrayList<String>(ids.subList(i, Math.min(i + MAX_IDS_PER_CALL, ids.size())));
+      calls.add(client.batchGetBuildsAsync(batch).whenComplete((builds, e) -> {
+        if (e != null) {
+          // Try again on the next poll. Launchers still have their own timeout
+          LOGGER.log(Level.WARNING, String.format("Failed to get status of %s CodeBuild builds", batch.size()),
+              CodeBuildClientWrapper.unwrap(e));
+          return;
+        }
+        for (Build b : builds) {
+          deliver(b);
+        }
+      }));
+    }
+    CompletableFuture.allOf(calls.toArray(new CompletableFuture<?>[0])).whenComplete((v, e) -> polling.set(false));
+  }
+
+  private void deliver(@NonNull Build build) {
+    Watch w = watches.get(build.getId());
+    if (w == null) {
+      return;
+    }
+
+    synchronized (w) {
+      if (Objects.equals(w.lastStatus, build.getBuildStatus())
+          && Objects.equals(w.lastPhase, build.getCurrentPhase())) {
+        return;
+      }
+      w.lastStatus = build.getBuildStatus();
+      w.lastPhase = build.getCurrentPhase();
+    }
+
+    LOGGER.finest(String.format("Build ID: %s Status: %s Phase: %s", build.getId(), build.getBuildStatus(),
+        build.getCurrentPhase()));
+    try {
+      w.listener.onBuildUpdate(build);
+    } catch (Exception e) {
+      LOGGER.log(Level.WARNING, String.format("Listener failed for build ID: %s", build.getId()), e);
+    }
+  }
+
+  private synchronized void stopIfIdle() {
+    if (watches.isEmpty() && task != null) {
+      task.cancel(false);
+      task = null;
+    }
+  }
+}
@@ -0,0 +1,157 @@
+package io.jenkins.plugins.codebuildcloud;
+
+import java.util.Calendar;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.apache.commons.lang.StringUtils;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.verb.POST;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Descriptor;
+import hudson.scheduler.CronTab;
+import hudson.scheduler.RareOrImpossibleDateException;
+import hudson.util.FormValidation;
+import jenkins.model.Jenkins;
+
+/**
+ * A recurring time window during which a {@link CodeBuildCloud} keeps more
+ * agents connected and may run more of them than usual. Windows start on a
+ * cron schedule and last a fixed number of minutes.
+ */
+public class CodeBuildCapacityProfile extends AbstractDescribableImpl<CodeBuildCapacityProfile> {
+
+  private static final Logger LOGGER = Logger.getLogger(CodeBuildCapacityProfile.class.getName());
+
+  @NonNull
+  private final String spec;
+  private final int durationMinutes;
+  private final int minIdleAgents;
+  private final int maxAgents;
+
+  private transient CronTab cronTab;
+  // Set once the schedule turned out to never match, e.g. February 31st
+  private transient volatile boolean impossible;
+
+  @DataBoundConstructor
+  public CodeBuildCapacityProfile(@NonNull String spec, int durationMinutes, int minIdleAgents, int maxAgents) {
+    this.spec = spec;
+    this.durationMinutes = durationMinutes;
+    this.minIdleAgents = minIdleAgents;
+    this.maxAgents = maxAgents;
+  }
+
+  @NonNull
+  public String getSpec() {
+    return spec;
+  }
+
+  public int getDurationMinutes() {
+    return durationMinutes;
+  }
+
+  public int getMinIdleAgents() {
+    return minIdleAgents;
+  }
+
+  public int getMaxAgents() {
+    return maxAgents;
+  }
+
+  /**
+   * Whether the window is open at <code>now</code>, or opens within
+   * <code>leadMs</code> - so agents can be launched ahead of it and be
+   * connected when it starts.
+   */
+  public boolean isActive(@NonNull Calendar now, long leadMs) {
+    CronTab tab = getCronTab();
+    if (tab == null || impossible) {
+      return false;
+    }
+
+    Calendar ahead = (Calendar) now.clone();
+    ahead.setTimeInMillis(now.getTimeInMillis() + leadMs);
+    Calendar start;
+    try {
+      start = tab.floor(ahead);
+    } catch (RareOrImpossibleDateException e) {
+      impossible = true;
+      LOGGER.warning(String.format("Ignoring capacity profile with schedule '%s', it never matches", spec));
+      return false;
+    }
+    return start != null
+        && now.getTimeInMillis() < start.getTimeInMillis() + TimeUnit.MINUTES.toMillis(durationMinutes);
+  }
+
+  private synchronized CronTab getCronTab() {
+    if (cronTab == null) {
+      try {
+        cronTab = new CronTab(spec);
+      } catch (Exception e) { // Older cores throw ANTLRException
+        LOGGER.warning(String.format("Ignoring capacity profile with invalid schedule '%s': %s", spec, e));
+        return null;
+      }
+    }
+    return cronTab;
+  }
+
+  @Extension
+  public static class DescriptorImpl extends Descriptor<CodeBuildCapacityProfile> {
+
+    @POST
+    public FormValidation doCheckSpec(@QueryParameter String value) {
+      CodeBuildCloud.getJenkins().checkPermission(Jenkins.ADMINISTER);
+      if (StringUtils.isBlank(value)) {
+        return FormValidation.error("Must include a schedule");
+      }
+      CronTab tab;
+      try {
+        tab = new CronTab(value);
+      } catch (Exception e) {
+        return FormValidation.error("Invalid schedule: " + e.getMessage());
+      }
+      try {
+        tab.floor(Calendar.getInstance());
+        return FormValidation.ok();
+      } catch (RareOrImpossibleDateException e) {
+        return FormValidation.error("Schedule never matches");
+      }
+    }
+
+    @POST
+    public FormValidation doCheckDurationMinutes(@QueryParameter String value) {
+      return checkAtLeast(value, 1, "Invalid Duration Specified. ");
+    }
+
+    @POST
+    public FormValidation doCheckMinIdleAgents(@QueryParameter String value) {
+      return checkAtLeast(value, 0, "Invalid Minimum Idle Agents Specified. ");
+    }
+
+    @POST
+    public FormValidation doCheckMaxAgents(@QueryParameter String value) {
+      return checkAtLeast(value, 1, "Invalid Max Agent Specified. ");
+    }
+
+    private FormValidation checkAtLeast(String value, int min, String error) {
+      CodeBuildCloud.getJenkins().checkPermission(Jenkins.ADMINISTER);
+      try {
+        if (Integer.parseInt(value) >= min) {
+          return FormValidation.ok();
+        }
+      } catch (NumberFormatException e) {
+        // Fall through
+      }
+      return FormValidation.error(error);
+    }
+
+    @Override
+    public String getDisplayName() {
+      return "Capacity Profile";
+    }
+  }
+}
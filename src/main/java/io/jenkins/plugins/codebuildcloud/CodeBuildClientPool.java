@@ -0,0 +1,235 @@
+package io.jenkins.plugins.codebuildcloud;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.ProxyConfiguration;
+import hudson.Util;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import jenkins.model.Jenkins;
+
+/**
+ * Process wide pool of {@link CodeBuildClientWrapper}s keyed by credentials,
+ * region and proxy settings. Clouds with the same settings, reloaded cloud
+ * configurations and form requests all share the same client, and with it its
+ * credentials and connection pool.
+ *
+ * Clouds hold a reference on each client they use. References are weak, so a
+ * cloud replaced by a configuration save releases its client once Jenkins and
+ * its agents no longer refer to it. Clients nobody holds a reference on are
+ * shut down after {@link #IDLE_EVICTION_MS} without use.
+ *
+ * Clients are built outside the pool's lock, since that looks up credentials.
+ * Whoever asks for a client while it is being built waits for that one.
+ */
+public class CodeBuildClientPool {
+
+  private static final Logger LOGGER = Logger.getLogger(CodeBuildClientPool.class.getName());
+
+  static final long IDLE_EVICTION_MS = TimeUnit.MINUTES.toMillis(10);
+
+  // Bumped whenever credentials change so stale clients are not handed out
+  private static final AtomicLong credentialsGeneration = new AtomicLong();
+
+  private static final Map<Key, Entry> entries = new HashMap<Key, Entry>();
+
+  static final class Key {
+    private final String credentialsId;
+    private final String region;
+    private final String proxyHost;
+    private final int proxyPort;
+    private final String proxyUser;
+    private final String proxyPasswordDigest;
+    private final long generation;
+
+    Key(String credentialsId, String region, ProxyConfiguration proxy, long generation) {
+      this.credentialsId = Util.fixNull(credentialsId);
+      this.region = Util.fixNull(region);
+      this.proxyHost = proxy == null ? "" : Util.fixNull(proxy.name);
+      this.proxyPort = proxy == null ? 0 : proxy.port;
+      this.proxyUser = proxy == null ? "" : Util.fixNull(proxy.getUserName());
+      this.proxyPasswordDigest = proxy == null ? "" : Util.getDigestOf(Util.fixNull(proxy.getPassword()));
+      this.generation = generation;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key k = (Key) o;
+      return proxyPort == k.proxyPort && generation == k.generation && credentialsId.equals(k.credentialsId)
+          && region.equals(k.region) && proxyHost.equals(k.proxyHost) && proxyUser.equals(k.proxyUser)
+          && proxyPasswordDigest.equals(k.proxyPasswordDigest);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(credentialsId, region, proxyHost, proxyPort, proxyUser, proxyPasswordDigest, generation);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s/%s", credentialsId, region);
+    }
+  }
+
+  private static final class Entry {
+    final Key key;
+    final CompletableFuture<CodeBuildClientWrapper> client = new CompletableFuture<CodeBuildClientWrapper>();
+    final AtomicBoolean building = new AtomicBoolean();
+    final Set<Object> owners = Collections.newSetFromMap(new WeakHashMap<Object, Boolean>());
+    long lastUsed;
+
+    Entry(Key key) {
+      this.key = key;
+    }
+  }
+
+  private CodeBuildClientPool() {
+  }
+
+  /**
+   * Gets the shared client for these settings and holds a reference on it for
+   * as long as <code>owner</code> is reachable.
+   */
+  @NonNull
+  public static CodeBuildClientWrapper acquire(@NonNull Object owner, String credentialsId, String region) {
+    Entry e;
+    synchronized (CodeBuildClientPool.class) {
+      e = entry(credentialsId, region);
+      long generation = credentialsGeneration.get();
+      for (Map.Entry<Key, Entry> other : entries.entrySet()) {
+        if (other.getKey().generation != generation) {
+          // Built with old credentials - the owner moves to the new client
+          other.getValue().owners.remove(owner);
+        }
+      }
+      e.owners.add(owner);
+    }
+    return clientOf(e, credentialsId, region);
+  }
+
+  /**
+   * Gets the shared client for these settings without holding a reference, for
+   * short lived uses such as filling in forms.
+   */
+  @NonNull
+  public static CodeBuildClientWrapper borrow(String credentialsId, String region) {
+    Entry e;
+    synchronized (CodeBuildClientPool.class) {
+      e = entry(credentialsId, region);
+    }
+    return clientOf(e, credentialsId, region);
+  }
+
+  /**
+   * Drops the reference <code>owner</code> holds on a client, for when it
+   * switches to other settings.
+   */
+  public static synchronized void release(@NonNull Object owner, @NonNull CodeBuildClientWrapper client) {
+    for (Entry e : entries.values()) {
+      if (e.client.getNow(null) == client) {
+        e.owners.remove(owner);
+      }
+    }
+  }
+
+  /** Changes whenever clients handed out before should no longer be used. */
+  static long getCredentialsGeneration() {
+    return credentialsGeneration.get();
+  }
+
+  /** Stops handing out clients built with the old credentials. */
+  static void credentialsChanged() {
+    LOGGER.fine("Credentials changed, new CodeBuild clients will be built");
+    credentialsGeneration.incrementAndGet();
+  }
+
+  private static Entry entry(String credentialsId, String region) {
+    Jenkins instance = CodeBuildCloud.getJenkins();
+    Key key = new Key(credentialsId, region, instance.proxy, credentialsGeneration.get());
+    Entry e = entries.computeIfAbsent(key, Entry::new);
+    e.lastUsed = System.currentTimeMillis();
+    return e;
+  }
+
+  // Not holding the pool's lock
+  private static CodeBuildClientWrapper clientOf(Entry e, String credentialsId, String region) {
+    if (e.building.compareAndSet(false, true)) {
+      try {
+        LOGGER.fine(String.format("Building CodeBuild client for %s", e.key));
+        Jenkins instance = CodeBuildCloud.getJenkins();
+        e.client.complete(CodeBuildClientWrapperFactory.buildClient(credentialsId, region, instance));
+      } catch (RuntimeException ex) {
+        e.client.completeExceptionally(ex);
+        // The next one to ask tries again
+        synchronized (CodeBuildClientPool.class) {
+          entries.remove(e.key, e);
+        }
+      }
+    }
+    try {
+      return e.client.join();
+    } catch (CompletionException ex) {
+      throw ex.getCause() instanceof RuntimeException ? (RuntimeException) ex.getCause() : ex;
+    }
+  }
+
+  static synchronized void evictIdle(long now) {
+    Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<Key, Entry> me = it.next();
+      Entry e = me.getValue();
+      if (e.owners.isEmpty() && now - e.lastUsed > IDLE_EVICTION_MS) {
+        LOGGER.fine(String.format("Evicting idle CodeBuild client for %s", me.getKey()));
+        it.remove();
+        e.client.thenAccept(CodeBuildClientWrapper::shutdown);
+      }
+    }
+  }
+
+  @Extension
+  public static class EvictionWork extends AsyncPeriodicWork {
+
+    public EvictionWork() {
+      super("CodeBuild client pool eviction");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getRecurrencePeriod() {
+      return TimeUnit.MINUTES.toMillis(1);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void execute(TaskListener listener) {
+      evictIdle(System.currentTimeMillis());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected Level getNormalLoggingLevel() {
+      return Level.FINEST;
+    }
+  }
+}
@@ -1,15 +1,20 @@
 package io.jenkins.plugins.codebuildcloud;
 
-import java.io.InvalidObjectException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.amazonaws.AmazonWebServiceRequest;
 import com.amazonaws.ClientConfiguration;
-import com.amazonaws.services.codebuild.AWSCodeBuild;
-import com.amazonaws.services.codebuild.AWSCodeBuildClientBuilder;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.codebuild.AWSCodeBuildAsync;
+import com.amazonaws.services.codebuild.AWSCodeBuildAsyncClientBuilder;
 import com.amazonaws.services.codebuild.model.BatchGetBuildsRequest;
 import com.amazonaws.services.codebuild.model.BatchGetBuildsResult;
 import com.amazonaws.services.codebuild.model.BatchGetProjectsRequest;
@@ -21,31 +26,66 @@ import com.amazonaws.services.codebuild.model.Project;
 import com.amazonaws.services.codebuild.model.StartBuildRequest;
 import com.amazonaws.services.codebuild.model.StartBuildResult;
 import com.amazonaws.services.codebuild.model.StopBuildRequest;
+import com.amazonaws.services.codebuild.model.StopBuildResult;
 import com.cloudbees.jenkins.plugins.awscredentials.AWSCredentialsHelper;
 import com.cloudbees.jenkins.plugins.awscredentials.AmazonWebServicesCredentials;
-import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.AsyncCacheLoader;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.ProxyConfiguration;
 import jenkins.model.Jenkins;
-
+import jenkins.util.SystemProperties;
+
+/**
+ * Wraps the CodeBuild API calls this plugin makes. Every call has a blocking
+ * and an asynchronous variant. The asynchronous ones return
+ * {@link CompletableFuture}s and should be preferred on Jenkins threads. All
+ * calls are retried and guarded by a circuit breaker, see
+ * {@link CodeBuildApiGuard}.
+ */
 public class CodeBuildClientWrapper {
-  private AWSCodeBuild _client;
+  // The async client also implements the blocking API
+  private AWSCodeBuildAsync _client;
+  private CodeBuildBuildStatusPoller statusPoller;
+  private final String credentialsId;
+  private final String region;
+  private final CodeBuildApiGuard guard;
 
   public CodeBuildClientWrapper(String credentialsId, String region, Jenkins instance) {
     this._client = buildClient(credentialsId, region, instance);
+    this.credentialsId = credentialsId;
+    this.region = region;
+    this.guard = new CodeBuildApiGuard(String.format("%s/%s", credentialsId, region));
   }
 
   private static final Logger LOGGER = Logger.getLogger(CodeBuildClientWrapper.class.getName());
 
-  private static transient Cache<String, Integer> myCache = Caffeine.newBuilder()
-      .expireAfterWrite(1, TimeUnit.HOURS).build();
+  // How soon changes to a project's concurrent build limit are picked up
+  static final long PROJECT_REFRESH_SECONDS = SystemProperties
+      .getLong(CodeBuildClientWrapper.class.getName() + ".projectRefreshSeconds", 300L);
+
+  // What a project counts as when its limit cannot be looked up - the same as
+  // having none
+  private static final Integer UNKNOWN_LIMIT = Integer.MAX_VALUE;
+
+  // What a project counts as while its limit is first looked up, so nothing
+  // launches past it in the meantime
+  private static final Integer LOADING_LIMIT = 0;
 
-  private static AWSCodeBuild buildClient(String credentialsId, String region, Jenkins instance) {
+  // Shared by every client. Same project names in other accounts or regions are
+  // other projects.
+  private static final AsyncLoadingCache<ProjectKey, Integer> projectLimits = Caffeine.newBuilder()
+      .refreshAfterWrite(Math.max(1, PROJECT_REFRESH_SECONDS), TimeUnit.SECONDS)
+      .expireAfterAccess(1, TimeUnit.HOURS).buildAsync(new ProjectLimitLoader());
+
+  private static AWSCodeBuildAsync buildClient(String credentialsId, String region, Jenkins instance) {
 
     ProxyConfiguration proxy = instance.proxy;
     ClientConfiguration clientConfiguration = new ClientConfiguration();
+    // CodeBuildApiGuard retries, the SDK retrying underneath would multiply them
+    clientConfiguration.setMaxErrorRetry(0);
 
     if (proxy != null) {
       clientConfiguration.setProxyHost(proxy.name);
@@ -54,7 +94,7 @@ public class CodeBuildClientWrapper {
       clientConfiguration.setProxyPassword(proxy.getPassword());
     }
 
-    AWSCodeBuildClientBuilder builder = AWSCodeBuildClientBuilder.standard()
+    AWSCodeBuildAsyncClientBuilder builder = AWSCodeBuildAsyncClientBuilder.standard()
         .withClientConfiguration(clientConfiguration).withRegion(region);
 
     AmazonWebServicesCredentials credentials = AWSCredentialsHelper.getCredentials(credentialsId, instance);
@@ -70,8 +110,52 @@ public class CodeBuildClientWrapper {
     return builder.build();
   }
 
+  /**
+   * Bridges the SDK's callback style to a {@link CompletableFuture}.
+   */
+  private static class CompletableHandler<REQ extends AmazonWebServiceRequest, RES> extends CompletableFuture<RES>
+      implements AsyncHandler<REQ, RES> {
+
+    @Override
+    public void onError(Exception exception) {
+      completeExceptionally(exception);
+    }
+
+    @Override
+    public void onSuccess(REQ request, RES result) {
+      complete(result);
+    }
+  }
+
+  /**
+   * Failures of dependent stages arrive wrapped in a
+   * {@link CompletionException}. Gets back the AWS exception.
+   */
+  public static Throwable unwrap(Throwable e) {
+    while (e instanceof CompletionException && e.getCause() != null) {
+      e = e.getCause();
+    }
+    return e;
+  }
+
+  /**
+   * Releases the client's connections. Only called by
+   * {@link CodeBuildClientPool} once nobody uses this client anymore.
+   */
+  void shutdown() {
+    _client.shutdown();
+  }
+
+  /**
+   * False while calls to this client's endpoint are suspended after repeated
+   * failures. See {@link CodeBuildApiGuard}.
+   */
+  public boolean isAvailable() {
+    return guard.isAvailable();
+  }
+
   public ListProjectsResult listProjects(ListProjectsRequest request) {
-    return _client.listProjects(request);
+    return guard.callSync("ListProjects", () -> _client.listProjects(request));
   }
 
   public enum CodeBuildStatus {
@@ -88,7 +172,7 @@ public class CodeBuildClientWrapper {
     BatchGetBuildsRequest req = new BatchGetBuildsRequest();
     req.setIds(Arrays.asList(buildId));
 
-    BatchGetBuildsResult res = _client.batchGetBuilds(req);
+    BatchGetBuildsResult res = guard.callSync("BatchGetBuilds", () -> _client.batchGetBuilds(req));
     assert res.getBuilds().size() == 1;
 
     Build b = res.getBuilds().get(0);
@@ -97,21 +181,53 @@ public class CodeBuildClientWrapper {
     return CodeBuildStatus.valueOf(bstatus);
   }
 
-  public void checkBuildStatus(@NonNull String buildId, List<CodeBuildStatus> invalidStatuses)
-      throws InvalidObjectException {
+  /**
+   * Looks up several builds with a single BatchGetBuilds call.
+   *
+   * @param buildIds at most {@link CodeBuildBuildStatusPoller#MAX_IDS_PER_CALL}
+   *                 build IDs.
+   */
+  public List<Build> batchGetBuilds(@NonNull List<String> buildIds) {
+    return guard.callSync("BatchGetBuilds", () -> _client.batchGetBuilds(new BatchGetBuildsRequest().withIds(buildIds)))
+        .getBuilds();
+  }
+
+  public CompletableFuture<List<Build>> batchGetBuildsAsync(@NonNull List<String> buildIds) {
+    return guard.call("BatchGetBuilds", () -> {
+      CompletableHandler<BatchGetBuildsRequest, BatchGetBuildsResult> handler = new CompletableHandler<BatchGetBuildsRequest, BatchGetBuildsResult>();
+      _client.batchGetBuildsAsync(new BatchGetBuildsRequest().withIds(buildIds), handler);
+      return handler;
+    }).thenApply(BatchGetBuildsResult::getBuilds);
+  }
 
-    // Run request to ask Codebuild status of the build. This allows us to fail fast
-    // on this side of the connection.
-    CodeBuildStatus status = getBuildStatus(buildId);
-    LOGGER.finest("Current Build Status: buildId - " + buildId + " Status: " + status.name());
+  public CompletableFuture<CodeBuildStatus> getBuildStatusAsync(@NonNull String buildId) {
+    return batchGetBuildsAsync(Arrays.asList(buildId)).thenApply(builds -> {
+      assert builds.size() == 1;
+      return CodeBuildStatus.valueOf(builds.get(0).getBuildStatus());
+    });
+  }
 
-    if (invalidStatuses.contains(status)) {
-      throw new InvalidObjectException("Invalid CodeBuild status detected");
+  /**
+   * Shared poller that batches the status checks of every build launched
+   * through this client.
+   */
+  public synchronized CodeBuildBuildStatusPoller getStatusPoller() {
+    if (statusPoller == null) {
+      statusPoller = new CodeBuildBuildStatusPoller(this);
     }
+    return statusPoller;
   }
 
   public StartBuildResult startBuild(StartBuildRequest req) {
-    return _client.startBuild(req);
+    return guard.callSync("StartBuild", () -> _client.startBuild(req));
+  }
+
+  public CompletableFuture<StartBuildResult> startBuildAsync(StartBuildRequest req) {
+    return guard.call("StartBuild", () -> {
+      CompletableHandler<StartBuildRequest, StartBuildResult> handler = new CompletableHandler<StartBuildRequest, StartBuildResult>();
+      _client.startBuildAsync(req, handler);
+      return handler;
+    });
   }
 
   public void stopBuild(@NonNull String buildId) {
@@ -124,7 +240,7 @@ public class CodeBuildClientWrapper {
     if (status == CodeBuildStatus.IN_PROGRESS) {
       try {
         LOGGER.finest(String.format("Stopping build ID: %s", buildId));
-        _client.stopBuild(new StopBuildRequest().withId(buildId));
+        guard.callSync("StopBuild", () -> _client.stopBuild(new StopBuildRequest().withId(buildId)));
       } catch (Exception e) {
         LOGGER.severe(String.format("Exception while attempting to stop build: %s.  Exception %s", e.getMessage(), e));
       }
@@ -134,28 +250,121 @@ public class CodeBuildClientWrapper {
     }
   }
 
-  private Integer _getMaxConcurrentJobs(@NonNull String jobName) {
+  /**
+   * Same as {@link #stopBuild(String)}, only a build that is still in progress
+   * is stopped.
+   */
+  public CompletableFuture<Void> stopBuildAsync(@NonNull String buildId) {
 
-    Integer result = Integer.MAX_VALUE;
+    LOGGER.finest(String.format("Stop Build Requested for build ID: %s", buildId));
+
+    return getBuildStatusAsync(buildId).thenCompose(status -> {
+      if (status != CodeBuildStatus.IN_PROGRESS) {
+        LOGGER.finest(String.format("Build ID: %s already stopped", buildId));
+        return CompletableFuture.<Void>completedFuture(null);
+      }
 
-    try {
-      BatchGetProjectsResult res = this._client.batchGetProjects(new BatchGetProjectsRequest().withNames(jobName));
+      LOGGER.finest(String.format("Stopping build ID: %s", buildId));
+      return guard.call("StopBuild", () -> {
+        CompletableHandler<StopBuildRequest, StopBuildResult> handler = new CompletableHandler<StopBuildRequest, StopBuildResult>();
+        _client.stopBuildAsync(new StopBuildRequest().withId(buildId), handler);
+        return handler;
+      }).<Void>thenApply(r -> null);
+    });
+  }
+
+  public CompletableFuture<Project> getProjectAsync(@NonNull String projectName) {
+    return guard.call("BatchGetProjects", () -> {
+      CompletableHandler<BatchGetProjectsRequest, BatchGetProjectsResult> handler = new CompletableHandler<BatchGetProjectsRequest, BatchGetProjectsResult>();
+      _client.batchGetProjectsAsync(new BatchGetProjectsRequest().withNames(projectName), handler);
+      return handler;
+    }).thenApply(res -> {
       assert res.getProjects().size() == 1;
-      Project myproj = res.getProjects().get(0);
+      return res.getProjects().get(0);
+    });
+  }
 
-      if (myproj.getConcurrentBuildLimit() != null) {
-        result = myproj.getConcurrentBuildLimit();
+  private static final class ProjectKey {
+    final String credentialsId;
+    final String region;
+    final String projectName;
+
+    ProjectKey(String credentialsId, String region, String projectName) {
+      this.credentialsId = credentialsId;
+      this.region = region;
+      this.projectName = projectName;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
       }
-    } catch (Exception e) {
-      LOGGER.log(Level.SEVERE, "Unable to determine codebuild project size", e);
+      if (!(o instanceof ProjectKey)) {
+        return false;
+      }
+      ProjectKey k = (ProjectKey) o;
+      return Objects.equals(credentialsId, k.credentialsId) && Objects.equals(region, k.region)
+          && Objects.equals(projectName, k.projectName);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(credentialsId, region, projectName);
     }
 
-    LOGGER.finest("Total possible concurrent jobs  is being set to " + result);
-    return result;
+    @Override
+    public String toString() {
+      return String.format("%s/%s/%s", credentialsId, region, projectName);
+    }
   }
 
-  public Integer getMaxConcurrentJobs(@NonNull String jobName) {
-    return myCache.get(jobName, j -> _getMaxConcurrentJobs(j));
+  /**
+   * Looks project limits up with BatchGetProjects in the background. A failed
+   * refresh keeps the limit known so far.
+   */
+  private static final class ProjectLimitLoader implements AsyncCacheLoader<ProjectKey, Integer> {
+
+    /** {@inheritDoc} */
+    @Override
+    public CompletableFuture<Integer> asyncLoad(ProjectKey key, Executor executor) {
+      return fetchLimit(key).exceptionally(e -> {
+        LOGGER.log(Level.SEVERE, String.format("Unable to determine codebuild project size of %s", key), unwrap(e));
+        return UNKNOWN_LIMIT;
+      });
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public CompletableFuture<Integer> asyncReload(ProjectKey key, Integer oldValue, Executor executor) {
+      return fetchLimit(key).exceptionally(e -> {
+        LOGGER.log(Level.WARNING, String.format("Unable to refresh codebuild project size of %s, keeping %s", key,
+            oldValue), unwrap(e));
+        return oldValue;
+      });
+    }
+
+    private static CompletableFuture<Integer> fetchLimit(ProjectKey key) {
+      try {
+        return CodeBuildClientPool.borrow(key.credentialsId, key.region).getProjectAsync(key.projectName)
+            .thenApply(p -> {
+              Integer result = p.getConcurrentBuildLimit() == null ? UNKNOWN_LIMIT : p.getConcurrentBuildLimit();
+              LOGGER.finest(String.format("Total possible concurrent jobs of %s is being set to %s", key, result));
+              return result;
+            });
+      } catch (Exception e) {
+        return CompletableFuture.failedFuture(e);
+      }
+    }
+  }
 
+  /**
+   * The project's concurrent build limit, {@link Integer#MAX_VALUE} if it has
+   * none or it cannot be looked up, 0 until the first lookup is done. Never
+   * waits on CodeBuild, lookups and refreshes every
+   * {@link #PROJECT_REFRESH_SECONDS} run in the background.
+   */
+  public Integer getMaxConcurrentJobs(@NonNull String jobName) {
+    return projectLimits.get(new ProjectKey(credentialsId, region, jobName)).getNow(LOADING_LIMIT);
   }
-}
\ No newline at end of file
+}
@@ -5,9 +5,14 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -42,11 +47,11 @@ import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredenti
 
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.Extension;
-import hudson.model.Computer;
 import hudson.model.Descriptor;
 import hudson.model.ItemGroup;
 import hudson.model.Label;
 import hudson.model.Node;
+import hudson.model.Queue;
 import hudson.model.labels.LabelAtom;
 import hudson.security.ACL;
 import hudson.slaves.Cloud;
@@ -72,6 +77,15 @@ public class CodeBuildCloud extends Cloud {
 
   private static final Integer DEFAULT_AGENT_CONNECT_TIMEOUT = 180;
   private static final Integer DEFAULT_MAX_AGENTS = 50;
+  private static final Integer DEFAULT_MIN_IDLE_AGENTS = 0;
+  private static final Integer DEFAULT_EXECUTORS_PER_AGENT = 1;
+  private static final Integer DEFAULT_REUSE_IDLE_SECONDS = 0;
+  private static final Integer DEFAULT_REUSE_MAX_TASKS = 0;
+  private static final Integer DEFAULT_LAUNCH_BURST = 50;
+  private static final Integer DEFAULT_LAUNCH_REFILL_PER_MINUTE = 60;
+  private static final Integer DEFAULT_SPILLOVER_QUEUE_SECONDS = 120;
+  private static final Integer DEFAULT_RESPILL_QUEUE_SECONDS = 0;
+  private static final Integer DEFAULT_RELAUNCH_ATTEMPTS = 0;
   private static final String DEFAULT_PROTOCOLS = "JNLP4-connect";
   private static final Boolean DEFAULT_NORECONNECT = true;
 
@@ -148,6 +162,48 @@ public class CodeBuildCloud extends Cloud {
   @Nonnull
   private Integer maxAgents;
 
+  // Warm pool - optional, so not part of the constructor
+  private Integer minIdleAgents;
+
+  // Executors per agent, 0 to derive from the compute type - optional, so not
+  // part of the constructor
+  private Integer executorsPerAgent;
+
+  // Agent reuse - optional, so not part of the constructor
+  private Integer reuseIdleSeconds;
+  private Integer reuseMaxTasks;
+
+  // Extra projects to shard launches across - optional, so not part of the
+  // constructor
+  private List<CodeBuildProjectTarget> additionalProjects;
+
+  // Regions to spill over to - optional, so not part of the constructor
+  private List<CodeBuildRegionFallback> regionFallbacks;
+  private Integer spilloverQueueSeconds;
+
+  // Restarting builds stuck in the queue - optional, so not part of the constructor
+  private Integer respillQueueSeconds;
+
+  // Relaunching agents whose launch failed - optional, so not part of the
+  // constructor
+  private Integer relaunchAttempts;
+  private String relaunchComputeTypes;
+  private String relaunchDockerImages;
+
+  // Per-label quotas - optional, so not part of the constructor
+  private List<CodeBuildLabelQuota> labelQuotas;
+
+  // Scheduled capacity - optional, so not part of the constructor
+  private List<CodeBuildCapacityProfile> capacityProfiles;
+
+  // Compute type right-sizing - optional, so not part of the constructor
+  private String minComputeType;
+  private String maxComputeType;
+
+  // Launch pacing - optional, so not part of the constructor
+  private Integer launchBurst;
+  private Integer launchRefillPerMinute;
+
   @DataBoundConstructor
   public CodeBuildCloud(@NonNull String name,
       @NonNull String codeBuildProjectName,
@@ -226,6 +282,23 @@ public class CodeBuildCloud extends Cloud {
     LOGGER.info("CodeBuild dockerImagePullCredentials: " + this.dockerImagePullCredentials);
     LOGGER.info("CodeBuild verifyIsCodeBuildIPOnJNLP: " + this.verifyIsCodeBuildIPOnJNLP);
     LOGGER.info("Codebuild maxAgents:" + maxAgents);
+    LOGGER.info("Codebuild minIdleAgents:" + getMinIdleAgents());
+    LOGGER.info("Codebuild executorsPerAgent:" + getExecutorsPerAgent());
+    LOGGER.info("Codebuild reuseIdleSeconds:" + getReuseIdleSeconds());
+    LOGGER.info("Codebuild reuseMaxTasks:" + getReuseMaxTasks());
+    LOGGER.info("Codebuild additionalProjects:" + getLaunchTargets());
+    LOGGER.info("Codebuild regionFallbacks:" + getRegionFallbacks().size());
+    LOGGER.info("Codebuild spilloverQueueSeconds:" + getSpilloverQueueSeconds());
+    LOGGER.info("Codebuild respillQueueSeconds:" + getRespillQueueSeconds());
+    LOGGER.info("Codebuild relaunchAttempts:" + getRelaunchAttempts());
+    LOGGER.info("Codebuild relaunchComputeTypes:" + this.relaunchComputeTypes);
+    LOGGER.info("Codebuild relaunchDockerImages:" + this.relaunchDockerImages);
+    LOGGER.info("Codebuild labelQuotas:" + getLabelQuotas().size());
+    LOGGER.info("Codebuild capacityProfiles:" + getCapacityProfiles().size());
+    LOGGER.info("Codebuild minComputeType:" + this.minComputeType);
+    LOGGER.info("Codebuild maxComputeType:" + this.maxComputeType);
+    LOGGER.info("Codebuild launchBurst:" + getLaunchBurst());
+    LOGGER.info("Codebuild launchRefillPerMinute:" + getLaunchRefillPerMinute());
     LOGGER.info("CodeBuild computeType: " + this.computeType);
     LOGGER.info("CodeBuild direct: " + this.direct);
     LOGGER.info("CodeBuild disableHttpsCertValidation: " + this.disableHttpsCertValidation);
@@ -294,8 +367,9 @@ public class CodeBuildCloud extends Cloud {
   }
 
   @DataBoundSetter
-  public void setRegion(String region) {
+  public synchronized void setRegion(String region) {
     this.region = region;
+    releaseClient();
   }
 
   @NonNull
@@ -324,8 +398,17 @@ public class CodeBuildCloud extends Cloud {
   }
 
   @DataBoundSetter
-  public void setCredentialId(String credentialId) {
+  public synchronized void setCredentialId(String credentialId) {
     this.credentialId = credentialId;
+    releaseClient();
+  }
+
+  // Picked from the pool again on next use, so the old one can be evicted
+  private void releaseClient() {
+    if (this.client != null) {
+      CodeBuildClientPool.release(this, this.client);
+      this.client = null;
+    }
   }
 
   @NonNull
@@ -348,6 +431,349 @@ public class CodeBuildCloud extends Cloud {
     this.maxAgents = maxAgents;
   }
 
+  @NonNull
+  public Integer getMinIdleAgents() {
+    // Null when loaded from a configuration saved before the warm pool existed
+    return minIdleAgents == null ? DEFAULT_MIN_IDLE_AGENTS : minIdleAgents;
+  }
+
+  @NonNull
+  public Integer getExecutorsPerAgent() {
+    return executorsPerAgent == null ? DEFAULT_EXECUTORS_PER_AGENT : executorsPerAgent;
+  }
+
+  @DataBoundSetter
+  public void setExecutorsPerAgent(Integer executorsPerAgent) {
+    this.executorsPerAgent = executorsPerAgent;
+  }
+
+  @NonNull
+  public Integer getReuseIdleSeconds() {
+    return reuseIdleSeconds == null ? DEFAULT_REUSE_IDLE_SECONDS : reuseIdleSeconds;
+  }
+
+  @DataBoundSetter
+  public void setReuseIdleSeconds(Integer reuseIdleSeconds) {
+    this.reuseIdleSeconds = reuseIdleSeconds;
+  }
+
+  @NonNull
+  public Integer getReuseMaxTasks() {
+    return reuseMaxTasks == null ? DEFAULT_REUSE_MAX_TASKS : reuseMaxTasks;
+  }
+
+  @DataBoundSetter
+  public void setReuseMaxTasks(Integer reuseMaxTasks) {
+    this.reuseMaxTasks = reuseMaxTasks;
+  }
+
+  /**
+   * Whether agents go back to idle after a task instead of being terminated.
+   * See {@link CodeBuildRetentionStrategy}.
+   */
+  boolean isReuseEnabled() {
+    return getReuseIdleSeconds() > 0;
+  }
+
+  /**
+   * Executors for an agent of the given compute type: the configured number, or
+   * when that is 0 one per two vCPUs of the compute type.
+   */
+  int executorsFor(String computeType) {
+    int configured = getExecutorsPerAgent();
+    if (configured > 0) {
+      return configured;
+    }
+    CodeBuildComputeType t = CodeBuildComputeType.fromValue(computeType);
+    return t == null ? 1 : t.getDefaultExecutors();
+  }
+
+  @DataBoundSetter
+  public void setMinIdleAgents(Integer minIdleAgents) {
+    this.minIdleAgents = minIdleAgents;
+  }
+
+  @NonNull
+  public List<CodeBuildProjectTarget> getAdditionalProjects() {
+    return additionalProjects == null ? Collections.<CodeBuildProjectTarget>emptyList() : additionalProjects;
+  }
+
+  @DataBoundSetter
+  public void setAdditionalProjects(List<CodeBuildProjectTarget> additionalProjects) {
+    this.additionalProjects = additionalProjects;
+  }
+
+  @NonNull
+  public List<CodeBuildLabelQuota> getLabelQuotas() {
+    return labelQuotas == null ? Collections.<CodeBuildLabelQuota>emptyList() : labelQuotas;
+  }
+
+  @DataBoundSetter
+  public void setLabelQuotas(List<CodeBuildLabelQuota> labelQuotas) {
+    this.labelQuotas = labelQuotas;
+  }
+
+  @NonNull
+  public List<CodeBuildCapacityProfile> getCapacityProfiles() {
+    return capacityProfiles == null ? Collections.<CodeBuildCapacityProfile>emptyList() : capacityProfiles;
+  }
+
+  @DataBoundSetter
+  public void setCapacityProfiles(List<CodeBuildCapacityProfile> capacityProfiles) {
+    this.capacityProfiles = capacityProfiles;
+  }
+
+  /**
+   * Minimum idle agents right now: the configured value, raised by any capacity
+   * profile whose window is open or opens within one cold start.
+   */
+  int getEffectiveMinIdleAgents() {
+    int result = getMinIdleAgents();
+    for (CodeBuildCapacityProfile p : getActiveCapacityProfiles()) {
+      result = Math.max(result, p.getMinIdleAgents());
+    }
+    return result;
+  }
+
+  /**
+   * Maximum agents right now: the configured value, raised by any capacity
+   * profile whose window is open or opens within one cold start.
+   */
+  int getEffectiveMaxAgents() {
+    int result = getMaxAgents();
+    for (CodeBuildCapacityProfile p : getActiveCapacityProfiles()) {
+      result = Math.max(result, p.getMaxAgents());
+    }
+    return result;
+  }
+
+  private List<CodeBuildCapacityProfile> getActiveCapacityProfiles() {
+    List<CodeBuildCapacityProfile> profiles = getCapacityProfiles();
+    if (profiles.isEmpty()) {
+      return profiles;
+    }
+
+    // Launch early enough for the agents to be connected when the window opens
+    long lead = getAgentRegistry().getColdStartMs();
+    Calendar now = Calendar.getInstance();
+    List<CodeBuildCapacityProfile> active = new ArrayList<CodeBuildCapacityProfile>();
+    for (CodeBuildCapacityProfile p : profiles) {
+      if (p.isActive(now, lead)) {
+        active.add(p);
+      }
+    }
+    return active;
+  }
+
+  public String getMinComputeType() {
+    return minComputeType;
+  }
+
+  @DataBoundSetter
+  public void setMinComputeType(String minComputeType) {
+    this.minComputeType = minComputeType;
+  }
+
+  public String getMaxComputeType() {
+    return maxComputeType;
+  }
+
+  @DataBoundSetter
+  public void setMaxComputeType(String maxComputeType) {
+    this.maxComputeType = maxComputeType;
+  }
+
+  /**
+   * The compute type to launch an agent for a job with. When a range is
+   * configured, the smallest type in it that fits what the job used before, see
+   * {@link CodeBuildJobHistory}. Otherwise, or for jobs without history, the
+   * configured compute type.
+   */
+  @NonNull
+  String chooseComputeType(String jobKey) {
+    if (StringUtils.isBlank(minComputeType) && StringUtils.isBlank(maxComputeType)) {
+      return computeType;
+    }
+
+    CodeBuildComputeType configured = CodeBuildComputeType.fromValue(computeType);
+    CodeBuildComputeType min = CodeBuildComputeType.fromValue(StringUtils.defaultIfBlank(minComputeType, computeType));
+    CodeBuildComputeType max = CodeBuildComputeType.fromValue(StringUtils.defaultIfBlank(maxComputeType, computeType));
+    if (configured == null || min == null || max == null || min.compareTo(max) > 0) {
+      LOGGER.warning(String.format("Cloud '%s' has an unusable compute type range %s - %s, using %s", name,
+          minComputeType, maxComputeType, computeType));
+      return computeType;
+    }
+
+    CodeBuildJobHistory.Stats stats = CodeBuildJobHistory.get().get(jobKey);
+    if (stats == null) {
+      return CodeBuildComputeType.clamp(configured, min, max).getValue();
+    }
+    return CodeBuildComputeType.choose(stats, min, max).getValue();
+  }
+
+  @NonNull
+  public List<CodeBuildRegionFallback> getRegionFallbacks() {
+    return regionFallbacks == null ? Collections.<CodeBuildRegionFallback>emptyList() : regionFallbacks;
+  }
+
+  @DataBoundSetter
+  public void setRegionFallbacks(List<CodeBuildRegionFallback> regionFallbacks) {
+    this.regionFallbacks = regionFallbacks;
+  }
+
+  @NonNull
+  public Integer getSpilloverQueueSeconds() {
+    return spilloverQueueSeconds == null ? DEFAULT_SPILLOVER_QUEUE_SECONDS : spilloverQueueSeconds;
+  }
+
+  @DataBoundSetter
+  public void setSpilloverQueueSeconds(Integer spilloverQueueSeconds) {
+    this.spilloverQueueSeconds = spilloverQueueSeconds;
+  }
+
+  /** 0 to leave builds in the queue until the agent connect timeout. */
+  @NonNull
+  public Integer getRespillQueueSeconds() {
+    return respillQueueSeconds == null ? DEFAULT_RESPILL_QUEUE_SECONDS : respillQueueSeconds;
+  }
+
+  @DataBoundSetter
+  public void setRespillQueueSeconds(Integer respillQueueSeconds) {
+    this.respillQueueSeconds = respillQueueSeconds;
+  }
+
+  /** 0 to give up on an agent the first time its launch fails. */
+  @NonNull
+  public Integer getRelaunchAttempts() {
+    return relaunchAttempts == null ? DEFAULT_RELAUNCH_ATTEMPTS : relaunchAttempts;
+  }
+
+  @DataBoundSetter
+  public void setRelaunchAttempts(Integer relaunchAttempts) {
+    this.relaunchAttempts = relaunchAttempts;
+  }
+
+  public String getRelaunchComputeTypes() {
+    return relaunchComputeTypes;
+  }
+
+  @DataBoundSetter
+  public void setRelaunchComputeTypes(String relaunchComputeTypes) {
+    this.relaunchComputeTypes = relaunchComputeTypes;
+  }
+
+  public String getRelaunchDockerImages() {
+    return relaunchDockerImages;
+  }
+
+  @DataBoundSetter
+  public void setRelaunchDockerImages(String relaunchDockerImages) {
+    this.relaunchDockerImages = relaunchDockerImages;
+  }
+
+  /** Compute types to relaunch a failed agent with, in order. */
+  @NonNull
+  List<String> getRelaunchComputeTypeChain() {
+    return splitList(relaunchComputeTypes);
+  }
+
+  /** Images to relaunch a failed agent with, in order. */
+  @NonNull
+  List<String> getRelaunchDockerImageChain() {
+    return splitList(relaunchDockerImages);
+  }
+
+  // One per line or comma separated
+  private static List<String> splitList(String value) {
+    List<String> list = new ArrayList<String>();
+    for (String s : StringUtils.split(StringUtils.defaultString(value), ",\n\r")) {
+      if (StringUtils.isNotBlank(s)) {
+        list.add(s.trim());
+      }
+    }
+    return list;
+  }
+
+  /**
+   * Where a build stuck in the CodeBuild queue on <code>current</code> could
+   * be restarted instead: the other launch targets, then the fallback regions
+   * that are not degraded.
+   */
+  @NonNull
+  List<CodeBuildLaunchTarget> getRespillTargets(@NonNull CodeBuildLaunchTarget current) {
+    List<CodeBuildLaunchTarget> targets = new ArrayList<CodeBuildLaunchTarget>();
+    Set<String> seen = new HashSet<String>();
+    seen.add(current.getKey());
+    for (CodeBuildLaunchTarget t : getLaunchTargets()) {
+      if (seen.add(t.getKey())) {
+        targets.add(t);
+      }
+    }
+    CodeBuildRegionHealth health = getRegionHealth();
+    for (CodeBuildRegionFallback f : getRegionFallbacks()) {
+      CodeBuildLaunchTarget t = f.toLaunchTarget(this);
+      if (!health.isDegraded(f.getRegion()) && seen.add(t.getKey())) {
+        targets.add(t);
+      }
+    }
+    return targets;
+  }
+
+  /**
+   * Other compute types a build stuck in the CodeBuild queue could be restarted
+   * with, nearest first. Only types within the configured compute type range,
+   * and smaller ones only if the job is known to fit. Without a range the
+   * compute type is not changed.
+   */
+  @NonNull
+  List<String> getRespillComputeTypes(@NonNull String current, String jobKey) {
+    List<String> types = new ArrayList<String>();
+    if (StringUtils.isBlank(minComputeType) && StringUtils.isBlank(maxComputeType)) {
+      return types;
+    }
+    CodeBuildComputeType type = CodeBuildComputeType.fromValue(current);
+    CodeBuildComputeType min = CodeBuildComputeType.fromValue(StringUtils.defaultIfBlank(minComputeType, computeType));
+    CodeBuildComputeType max = CodeBuildComputeType.fromValue(StringUtils.defaultIfBlank(maxComputeType, computeType));
+    if (type == null || min == null || max == null) {
+      return types;
+    }
+
+    CodeBuildJobHistory.Stats stats = CodeBuildJobHistory.get().get(jobKey);
+    CodeBuildComputeType[] all = CodeBuildComputeType.values();
+    for (int d = 1; d < all.length; d++) {
+      int larger = type.ordinal() + d;
+      if (larger < all.length && larger >= min.ordinal() && larger <= max.ordinal()) {
+        types.add(all[larger].getValue());
+      }
+      int smaller = type.ordinal() - d;
+      if (smaller >= 0 && smaller >= min.ordinal() && smaller <= max.ordinal() && stats != null
+          && all[smaller].fits(stats)) {
+        types.add(all[smaller].getValue());
+      }
+    }
+    return types;
+  }
+
+  @NonNull
+  public Integer getLaunchBurst() {
+    return launchBurst == null ? DEFAULT_LAUNCH_BURST : launchBurst;
+  }
+
+  @DataBoundSetter
+  public void setLaunchBurst(Integer launchBurst) {
+    this.launchBurst = launchBurst;
+  }
+
+  @NonNull
+  public Integer getLaunchRefillPerMinute() {
+    return launchRefillPerMinute == null ? DEFAULT_LAUNCH_REFILL_PER_MINUTE : launchRefillPerMinute;
+  }
+
+  @DataBoundSetter
+  public void setLaunchRefillPerMinute(Integer launchRefillPerMinute) {
+    this.launchRefillPerMinute = launchRefillPerMinute;
+  }
+
   @NonNull
   public String getDirect() {
     return direct;
@@ -500,19 +926,15 @@ public class CodeBuildCloud extends Cloud {
 
   // Implementation methods for provisioning codebuild cloud agents
 
-  private transient long lastProvisionTime = 0; // keep track of to not create too many agents
-
-  private long getLastProvisionTime() {
-    LOGGER.finest("Current Provision time: " + String.valueOf(lastProvisionTime));
-    return lastProvisionTime;
-  }
-
-  private void setLastProvisionTime(long provisionTime) {
-    LOGGER.finest("Setting Provision time: " + String.valueOf(provisionTime));
-    lastProvisionTime = provisionTime;
+  // keep track of to not create too many agents
+  private CodeBuildLaunchPacer getLaunchPacer() {
+    return CodeBuildLaunchPacer.forCloud(name, getLaunchBurst(), getLaunchRefillPerMinute());
   }
 
   private transient CodeBuildClientWrapper client;
+  private transient long clientGeneration;
+
+  private transient CodeBuildLaunchTemplate launchTemplate;
 
   /** {@inheritDoc} */
   @Override
@@ -533,81 +955,349 @@ public class CodeBuildCloud extends Cloud {
   }
 
   /**
-   * Getter for the field <code>client</code>.
+   * Getter for the field <code>client</code>. Clients are shared through
+   * {@link CodeBuildClientPool} with every cloud using the same credentials and
+   * region.
    *
    * @return a {@link com.amazonaws.services.codebuild.AWSCodeBuild} object.
    */
   public synchronized CodeBuildClientWrapper getClient() {
-    if (this.client == null) {
-      this.client = CodeBuildClientWrapperFactory.buildClient(this.credentialId, this.region,
-          CodeBuildCloud.getJenkins());
+    long generation = CodeBuildClientPool.getCredentialsGeneration();
+    if (this.client == null || this.clientGeneration != generation) {
+      this.client = CodeBuildClientPool.acquire(this, this.credentialId, this.region);
+      this.clientGeneration = generation;
     }
     return this.client;
   }
 
   /**
-   * Find the number of {@link CodeBuildAgent} instances still connecting to
-   * Jenkins host.
+   * Client for the account and region of a launch target.
    */
-  private long countStillProvisioning() {
+  public CodeBuildClientWrapper getClient(@NonNull CodeBuildLaunchTarget target) {
+    if (StringUtils.equals(target.getCredentialId(), credentialId) && StringUtils.equals(target.getRegion(), region)) {
+      return getClient();
+    }
+    // The pool holds these by key already - nothing to cache here
+    return CodeBuildClientPool.acquire(this, target.getCredentialId(), target.getRegion());
+  }
 
-    long mycount = 0;
-
-    for (Node s : getJenkins().getNodes()) {
-      if (s instanceof CodeBuildAgent) {
-        CodeBuildAgent d = (CodeBuildAgent) s;
-        if (d.cloud.equals(this)) {
-          if (!d.terminated) { // Even if node still exists and not cleaned up yet - time to not count it since
-                               // its on its way out.
-            if (d.getLauncher().isLaunchSupported()) {
-              // Still launching - means still provisioning
-              mycount += 1;
-            } else {
-              // Provisioned and in use - not still provisiong
-            }
-          }
+  /**
+   * Where new agents can be launched right now. Normally the main project
+   * followed by the additional projects, in configuration order. While this
+   * cloud's region is degraded, the first fallback region that is not.
+   */
+  @NonNull
+  public List<CodeBuildLaunchTarget> getLaunchTargets() {
+    CodeBuildRegionHealth health = getRegionHealth();
+    if (health.isDegraded(region)) {
+      for (CodeBuildRegionFallback f : getRegionFallbacks()) {
+        if (!health.isDegraded(f.getRegion())) {
+          return Collections.singletonList(f.toLaunchTarget(this));
         }
       }
+      // Everything is degraded - might as well stay home
     }
-    return mycount;
+
+    List<CodeBuildLaunchTarget> targets = new ArrayList<CodeBuildLaunchTarget>();
+    targets.add(new CodeBuildLaunchTarget(codeBuildProjectName, credentialId, region, 1, dockerImage));
+    for (CodeBuildProjectTarget p : getAdditionalProjects()) {
+      targets.add(p.toLaunchTarget(this));
+    }
+    return targets;
   }
 
-  private long totalProvisionedOrProvisioning() {
+  /** How long the steps of launching this cloud's agents take. */
+  @NonNull
+  public CodeBuildLaunchStats getLaunchStats() {
+    return CodeBuildLaunchStats.forCloud(name);
+  }
+
+  /** Why this cloud's agents failed to launch. */
+  @NonNull
+  public CodeBuildLaunchFailures getLaunchFailures() {
+    return CodeBuildLaunchFailures.forCloud(name);
+  }
 
-    long mycount = 0;
+  /** Queue times and error rates of the regions this cloud launches into. */
+  @NonNull
+  public CodeBuildRegionHealth getRegionHealth() {
+    return CodeBuildRegionHealth.forCloud(name);
+  }
 
-    // LOGGER.info("Count of Nodes: " + getJenkins().getNodes().size());
-    for (Node s : getJenkins().getNodes()) {
-      if (s instanceof CodeBuildAgent) {
-        CodeBuildAgent d = (CodeBuildAgent) s;
-        if (d.cloud.equals(this)) {
-          if (!d.terminated) { // if not terminated - assume is a running codebuild project
-            mycount += 1;
-          }
-        }
+  private long getMaxConcurrentJobs(@NonNull CodeBuildLaunchTarget target) {
+    return getClient(target).getMaxConcurrentJobs(target.getProjectName());
+  }
+
+  /**
+   * Picks the project an agent's build is started on: the one with the most
+   * headroom under its concurrent build limit, scaled by its weight. Ties go to
+   * the earlier project. Projects whose endpoint is suspended after repeated
+   * failures only get agents if all are. The choice is recorded in the agent
+   * registry straight away so concurrent launches spread out.
+   */
+  @NonNull
+  synchronized CodeBuildLaunchTarget assignLaunchTarget(@NonNull String agentName) {
+    CodeBuildAgentRegistry registry = getAgentRegistry();
+    CodeBuildLaunchTarget best = null;
+    boolean bestAvailable = false;
+    double bestScore = 0;
+    for (CodeBuildLaunchTarget t : getLaunchTargets()) {
+      boolean available = getClient(t).isAvailable();
+      long headroom = getMaxConcurrentJobs(t) - registry.countOnTarget(t);
+      double score = (double) headroom * t.getWeight();
+      if (best == null || (available && !bestAvailable) || (available == bestAvailable && score > bestScore)) {
+        best = t;
+        bestAvailable = available;
+        bestScore = score;
+      }
+    }
+    registry.assignTarget(agentName, best);
+    LOGGER.finest(String.format("Agent '%s' launches on %s (headroom score %s)", agentName, best, bestScore));
+    return best;
+  }
+
+  /**
+   * Whether CodeBuild calls go through for at least one launch target. False
+   * while they are suspended after repeated failures, see
+   * {@link CodeBuildApiGuard}.
+   */
+  private boolean isCodeBuildAvailable() {
+    for (CodeBuildLaunchTarget t : getLaunchTargets()) {
+      if (getClient(t).isAvailable()) {
+        return true;
       }
     }
-    return mycount;
+    return false;
+  }
+
+  /**
+   * Executor for the blocking parts of launching and terminating this cloud's
+   * agents. Its counters are the saturation metrics for this cloud.
+   */
+  @NonNull
+  public CodeBuildLaunchExecutor getLaunchExecutor() {
+    return CodeBuildLaunchExecutor.forCloud(name);
+  }
+
+  /**
+   * What the StartBuild requests of this cloud's agents have in common. A
+   * configuration change replaces the cloud, and with it the template. Changed
+   * credentials rebuild it.
+   */
+  synchronized CodeBuildLaunchTemplate getLaunchTemplate() {
+    long generation = CodeBuildClientPool.getCredentialsGeneration();
+    if (this.launchTemplate == null || this.launchTemplate.getCredentialsGeneration() != generation) {
+      this.launchTemplate = new CodeBuildLaunchTemplate(this, generation);
+    }
+    return this.launchTemplate;
+  }
+
+  /**
+   * Limit on agents launching at once, learned from how CodeBuild responds to
+   * StartBuild.
+   */
+  public CodeBuildAdaptiveLimit getAdaptiveLimit() {
+    return CodeBuildAdaptiveLimit.forCloud(name, getMaxAgents());
+  }
+
+  @NonNull
+  CodeBuildAgentRegistry getAgentRegistry() {
+    return CodeBuildAgentRegistry.forCloud(name);
+  }
+
+  /**
+   * Find the number of {@link CodeBuildAgent} instances still connecting to
+   * Jenkins host.
+   */
+  private long countStillProvisioning() {
+    return getAgentRegistry().countProvisioning();
+  }
+
+  private long totalProvisionedOrProvisioning() {
+    // Terminating agents are on their way out - time to not count them
+    return getAgentRegistry().countProvisionedOrProvisioning();
+  }
+
+  /**
+   * Find the number of {@link CodeBuildAgent} instances launched for the warm
+   * pool that are connected and have not run a task yet. These are the warm
+   * pool.
+   */
+  private long countIdleWarmAgents() {
+    return getAgentRegistry().countWarm(CodeBuildAgentRegistry.State.IDLE);
+  }
+
+  private static boolean isIdleWarm(@NonNull CodeBuildComputer c) {
+    // Not accepting tasks means the retention strategy is already disposing of it
+    return !c.isLaunchSupported() && c.isOnline() && c.isIdle() && c.isAcceptingTasks() && !c.hasAcceptedTask();
   }
 
   private long totalCanProvision() {
 
-    // Calculating here if CodeBuild Project is configured to limit
-    long totalConcurrentJobsPossibleFromCBP = getClient().getMaxConcurrentJobs(codeBuildProjectName);
+    // Calculating here if CodeBuild Projects are configured to limit. Launches are
+    // spread over all the projects, so what each has left adds up. Only agents
+    // on a project count against its limit - while the region is degraded the
+    // targets are the fallbacks, and agents still in the region do not use them.
+    CodeBuildAgentRegistry registry = getAgentRegistry();
+    long totalPossibleToProvisionFromCB = 0;
+    for (CodeBuildLaunchTarget t : getLaunchTargets()) {
+      long left = Math.max(0, getMaxConcurrentJobs(t) - registry.countOnTarget(t));
+      LOGGER.finest(String.format("Concurrent jobs left on %s: %s", t, left));
+      totalPossibleToProvisionFromCB = Math.min(Integer.MAX_VALUE, totalPossibleToProvisionFromCB + left);
+    }
+    // Not launched yet, so could still end up on any of them
+    totalPossibleToProvisionFromCB -= registry.countWithoutTarget();
     long totalProvisioned = totalProvisionedOrProvisioning();
-    LOGGER.finest("Total concurrent jobs from CB: " + totalConcurrentJobsPossibleFromCBP);
+    LOGGER.finest("Total concurrent jobs from CB: " + totalPossibleToProvisionFromCB);
     LOGGER.finest("Total concurrent jobs running/provisioning right now: " + totalProvisioned);
 
-    long totalPossibleToProvisionFromCB = totalConcurrentJobsPossibleFromCBP - totalProvisioned;
-    long totalPossibleToProvisionFromPlugin = getMaxAgents() - totalProvisioned;
+    int maxAgentsNow = getEffectiveMaxAgents();
+    long totalPossibleToProvisionFromPlugin = maxAgentsNow - totalProvisioned;
 
-    // Who wins the codebuild project or the plugin config? Which ever one is lower
-    // The lower one wins due to :
+    // Only limits agents still launching, once connected they no longer put load
+    // on StartBuild
+    long adaptiveLimit = getAdaptiveLimit().getLimit(maxAgentsNow);
+    long totalPossibleToProvisionFromAdaptive = adaptiveLimit - countStillProvisioning();
+    LOGGER.finest("Adaptive limit on launching agents: " + adaptiveLimit);
+
+    // Who wins the codebuild project, the plugin config or the adaptive limit?
+    // Which ever one is lower. The lower one wins due to :
     // If its CB - our APIs will fail with 429's.
     // If its maxAgents - the user has configured no more than N agents for this
     // cloud config.
-    return Math.min(totalPossibleToProvisionFromCB, totalPossibleToProvisionFromPlugin);
+    // If its adaptive - CodeBuild recently throttled us or hit an account limit.
+    return Math.min(Math.min(totalPossibleToProvisionFromCB, totalPossibleToProvisionFromPlugin),
+        totalPossibleToProvisionFromAdaptive);
+
+  }
 
+  /**
+   * Like {@link #totalCanProvision()}, but also within what the label may have
+   * of the cloud given the label quotas and the other labels' demand. See
+   * {@link CodeBuildFairShare}. Without label quotas every label may use all of
+   * the cloud.
+   */
+  private long totalCanProvision(Label label, int excessWorkload) {
+    long total = totalCanProvision();
+    if (total <= 0 || getLabelQuotas().isEmpty()) {
+      return total;
+    }
+
+    CodeBuildAgentRegistry registry = getAgentRegistry();
+    String key = labelKey(label);
+    long capacity = Math.min(Integer.MAX_VALUE, total + registry.countProvisionedOrProvisioning());
+    Map<String, Integer> allocation = CodeBuildFairShare.allocate((int) capacity, labelDemands(key, excessWorkload));
+    long allowed = allocation.getOrDefault(key, 0) - registry.countOnLabel(key);
+    LOGGER.finest(String.format("Label '%s' may have %s agents of %s, %s more", key, allocation.get(key), capacity,
+        allowed));
+    return Math.min(total, allowed);
+  }
+
+  /**
+   * What every label this cloud serves has running and waiting, with its quota.
+   * Waiting work is counted in agents.
+   */
+  private List<CodeBuildFairShare.Demand> labelDemands(@NonNull String requestingKey, int excessWorkload) {
+    int executorsPerAgent = executorsFor(chooseComputeType(null));
+    Map<String, Integer> queued = new HashMap<String, Integer>();
+    for (Queue.BuildableItem item : getJenkins().getQueue().getBuildableItems()) {
+      if (canProvision(item.getAssignedLabel())) {
+        queued.merge(labelKey(item.getAssignedLabel()), 1, Integer::sum);
+      }
+    }
+    // The label asking right now has work even if the queue snapshot disagrees
+    queued.merge(requestingKey, excessWorkload, Math::max);
+
+    Map<String, CodeBuildLabelQuota> quotas = new HashMap<String, CodeBuildLabelQuota>();
+    for (CodeBuildLabelQuota q : getLabelQuotas()) {
+      Label l = getJenkins().getLabel(q.getLabel());
+      quotas.put(l == null ? q.getLabel() : labelKey(l), q);
+    }
+
+    Set<String> keys = new HashSet<String>(queued.keySet());
+    keys.addAll(quotas.keySet());
+    CodeBuildAgentRegistry registry = getAgentRegistry();
+    List<CodeBuildFairShare.Demand> demands = new ArrayList<CodeBuildFairShare.Demand>();
+    for (String key : keys) {
+      int items = queued.getOrDefault(key, 0);
+      int agents = (items + executorsPerAgent - 1) / executorsPerAgent;
+      CodeBuildLabelQuota q = quotas.get(key);
+      demands.add(new CodeBuildFairShare.Demand(key, registry.countOnLabel(key), agents,
+          q == null ? 0 : q.getMinAgents(), q == null ? 0 : q.getMaxAgents(), q == null ? 1 : q.getWeight()));
+    }
+    return demands;
+  }
+
+  @NonNull
+  private String labelKey(Label label) {
+    return label == null ? getLabel() : label.getDisplayName();
+  }
+
+  /**
+   * Adds a new {@link CodeBuildAgent} to Jenkins in the background. Adding the
+   * node is what triggers the launcher, and with it the CodeBuild build.
+   */
+  private Future<Node> createAgent(@NonNull String displayName, @NonNull String labelKey, String jobKey,
+      @NonNull String computeType, int numExecutors) {
+    final CodeBuildCloud cloud = this;
+    final CodeBuildAgentRegistry registry = getAgentRegistry();
+
+    // Count it right away so the next provisioning tick sees it
+    registry.transition(displayName, CodeBuildAgentRegistry.State.PROVISIONING);
+    registry.assignLabel(displayName, labelKey);
+    registry.assignExecutors(displayName, numExecutors);
+    return getLaunchExecutor().submit(() -> {
+      try {
+        CodeBuildLauncher launcher = new CodeBuildLauncher(cloud);
+        CodeBuildAgent agent = new CodeBuildAgent(displayName, cloud, launcher);
+        agent.setJobKey(jobKey);
+        agent.setComputeType(computeType);
+        agent.setNumExecutors(numExecutors);
+        getJenkins().addNode(agent);
+        return agent;
+      } catch (Exception e) {
+        registry.remove(displayName);
+        throw e;
+      }
+    });
+  }
+
+  /**
+   * Jobs waiting for an agent from this cloud, most important first. See
+   * {@link CodeBuildLaunchPriority}.
+   */
+  private List<CodeBuildLaunchPriority.Candidate> prioritizedQueue() {
+    List<CodeBuildLaunchPriority.Candidate> candidates = new ArrayList<CodeBuildLaunchPriority.Candidate>();
+    // Buildable items come sorted by the queue sorter
+    for (Queue.BuildableItem item : getJenkins().getQueue().getBuildableItems()) {
+      if (canProvision(item.getAssignedLabel())) {
+        candidates.add(new CodeBuildLaunchPriority.Candidate(labelKey(item.getAssignedLabel()),
+            CodeBuildJobHistory.keyFor(item.task), candidates.size(), item.getInQueueSince()));
+      }
+    }
+    return CodeBuildLaunchPriority.order(candidates, System.currentTimeMillis());
+  }
+
+  /**
+   * Jobs waiting for an agent with this label, most important first, out of the
+   * ones no executor is provisioning for yet. Agents are sized for these jobs,
+   * but Jenkins may hand an agent another one, see {@link #smallestForAll}.
+   */
+  private static List<String> queuedJobKeys(List<CodeBuildLaunchPriority.Candidate> uncovered,
+      @NonNull String labelKey) {
+    List<String> keys = new ArrayList<String>();
+    for (CodeBuildLaunchPriority.Candidate c : uncovered) {
+      if (c.getLabel().equals(labelKey)) {
+        keys.add(c.getJobKey());
+      }
+    }
+    return keys;
+  }
+
+  private String newAgentName() {
+    // Unique node names
+    final String suffix = RandomStringUtils.randomAlphabetic(4);
+    return String.format("%s.%s", name, suffix);
   }
 
   /** {@inheritDoc} */
@@ -620,9 +1310,16 @@ public class CodeBuildCloud extends Cloud {
       return list;
     }
 
+    // guard against hammering CodeBuild while it keeps failing
+    if (!isCodeBuildAvailable()) {
+      LOGGER.fine(String.format("Provision of excess workload (%s) skipped, CodeBuild calls are suspended",
+          excessWorkload));
+      return list;
+    }
+
     // guard against too many provisioned based on CodeBuild project settings or End
-    // user plugin settings
-    long totalPossibleToProvision = totalCanProvision();
+    // user plugin settings, and against taking other labels' share
+    long totalPossibleToProvision = totalCanProvision(label, excessWorkload);
     if (totalPossibleToProvision <= 0) {
       LOGGER.finest(
           String.format(
@@ -631,53 +1328,173 @@ public class CodeBuildCloud extends Cloud {
       return list;
     }
 
-    // guard against double-provisioning with a 5 second cooldown clock (Should be
-    // more than enough)
-    long timeDiff = System.currentTimeMillis() - getLastProvisionTime();
-    LOGGER.finest("Diff in provison time: " + String.valueOf(timeDiff));
-    if (timeDiff < 5000) {
-      LOGGER.finest(
-          String.format("Provision of %s skipped, still on cooldown %sms of 5 seconds)", excessWorkload, timeDiff));
-      return list;
+    // If we reach here its time to provision. If Jenkins still thinks there is
+    // excess workload - go create it.
+    // Excess workload is in executors, the limits are in agents.
+    long items = excessWorkload;
+
+    // guard against spending scarce capacity on less important work. When the
+    // cloud cannot serve everything waiting, a label only gets agents for its
+    // jobs among the ones that fit, so other labels' more important jobs keep
+    // their place.
+    // Everything is counted in executors here, queue items need one each.
+    String labelName = labelKey(label);
+    List<CodeBuildLaunchPriority.Candidate> ranked = prioritizedQueue();
+    List<CodeBuildLaunchPriority.Candidate> uncovered = CodeBuildLaunchPriority.uncovered(ranked,
+        getAgentRegistry().countProvisioningExecutorsByLabel());
+    long headroom = totalCanProvision() * executorsFor(chooseComputeType(null));
+    if (headroom < uncovered.size()) {
+      items = Math.min(items, CodeBuildLaunchPriority.countForLabel(uncovered, labelName, headroom));
+      if (items <= 0) {
+        LOGGER.finest(String.format("Provision for label '%s' skipped, more important jobs come first", labelName));
+        return list;
+      }
     }
 
-    // If we reach here its time to provision. This is because the label matches and
-    // the cooldown period has been hit. If Jenkins still thinks there is excess
-    // workload - go create it.
     // We take min here since no matter which case we have - we want the minimum
     // number to launch.
-    long numToLaunch = Math.min(totalPossibleToProvision, excessWorkload);
+    List<AgentPlan> plan = planAgents(queuedJobKeys(uncovered, labelName), items, totalPossibleToProvision,
+        smallestForAll(ranked));
+
+    // guard against launching faster than configured. Agents that are still
+    // provisioning are already counted as planned by Jenkins and in
+    // totalCanProvision, so no cooldown is needed to avoid double-provisioning.
+    long numToLaunch = getLaunchPacer().acquire(labelName, plan.size());
 
     if (numToLaunch == 0) {
       LOGGER.finest(
-          String.format("Provision of excess workload (%s) skipped, total can launch is 0", excessWorkload));
-      return list; // Skip setting last provision time. Shouldnt apply since we didnt provision
-                   // anything.
+          String.format("Provision of excess workload (%s) skipped, launch pacer for label '%s' is empty",
+              excessWorkload, labelName));
+      return list;
     }
 
-    String labelName = label == null ? getLabel() : label.getDisplayName();
     LOGGER.info(String.format("Provisioning %s nodes for label '%s' (%s already provisioning)", numToLaunch, labelName,
         countStillProvisioning()));
 
     for (int i = 0; i < numToLaunch; i++) {
+      final String displayName = newAgentName();
+      AgentPlan a = plan.get(i);
+      list.add(new NodeProvisioner.PlannedNode(displayName,
+          createAgent(displayName, labelName, a.jobKey, a.computeType, a.executors), a.executors));
+    }
+
+    return list;
 
-      // Unique node names
-      final String suffix = RandomStringUtils.randomAlphabetic(4);
-      final String displayName = String.format("%s.%s", name, suffix);
+  }
 
-      final CodeBuildCloud cloud = this;
-      final Future<Node> nodeResolver = Computer.threadPoolForRemoting.submit(() -> {
-        CodeBuildLauncher launcher = new CodeBuildLauncher(cloud);
-        CodeBuildAgent agent = new CodeBuildAgent(displayName, cloud, launcher);
-        getJenkins().addNode(agent);
-        return agent;
-      });
-      list.add(new NodeProvisioner.PlannedNode(displayName, nodeResolver, 1));
+  /** One agent to launch, sized for the job it will most likely get. */
+  private static final class AgentPlan {
+    final String jobKey;
+    final String computeType;
+    final int executors;
+
+    AgentPlan(String jobKey, String computeType, int executors) {
+      this.jobKey = jobKey;
+      this.computeType = computeType;
+      this.executors = executors;
     }
+  }
 
-    setLastProvisionTime(System.currentTimeMillis());
-    return list;
+  /**
+   * The agents needed for this many waiting jobs, no more than
+   * <code>maxAgents</code>. Each agent takes as many jobs as its compute type
+   * has executors, and that depends on the job it is sized for, so the next
+   * agent is sized for the first job the previous ones do not take.
+   *
+   * @param jobKeys jobs waiting for an agent, most important first.
+   * @param floor   no agent is smaller, see {@link #smallestForAll}.
+   */
+  private List<AgentPlan> planAgents(@NonNull List<String> jobKeys, long items, long maxAgents,
+      CodeBuildComputeType floor) {
+    List<AgentPlan> plan = new ArrayList<AgentPlan>();
+    long covered = 0;
+    while (covered < items && plan.size() < maxAgents) {
+      String jobKey = covered < jobKeys.size() ? jobKeys.get((int) covered) : null;
+      String agentComputeType = chooseComputeType(jobKey);
+      CodeBuildComputeType chosen = CodeBuildComputeType.fromValue(agentComputeType);
+      if (floor != null && chosen != null && chosen.compareTo(floor) < 0) {
+        agentComputeType = floor.getValue();
+      }
+      int numExecutors = executorsFor(agentComputeType);
+      plan.add(new AgentPlan(jobKey, agentComputeType, numExecutors));
+      covered += Math.max(1, numExecutors);
+    }
+    return plan;
+  }
+
+  /**
+   * The smallest compute type agents may have while these jobs wait. Every
+   * agent has this cloud's label, so Jenkins may hand any of them to any of
+   * these jobs, whatever job the agent was sized for. Agents are only smaller
+   * than the configured compute type if every waiting job fits, otherwise a
+   * heavy job could end up on an agent sized for a light one. Null if no range
+   * is configured.
+   */
+  private CodeBuildComputeType smallestForAll(@NonNull List<CodeBuildLaunchPriority.Candidate> waiting) {
+    CodeBuildComputeType configured = CodeBuildComputeType.fromValue(chooseComputeType(null));
+    if (configured == null) {
+      return null;
+    }
+    CodeBuildComputeType needed = null;
+    for (CodeBuildLaunchPriority.Candidate c : waiting) {
+      CodeBuildComputeType t = CodeBuildComputeType.fromValue(chooseComputeType(c.getJobKey()));
+      if (t == null || t.compareTo(configured) >= 0) {
+        return configured;
+      }
+      if (needed == null || t.compareTo(needed) > 0) {
+        needed = t;
+      }
+    }
+    return needed == null ? configured : needed;
+  }
+
+  /**
+   * Tops the warm pool back up to {@link #getEffectiveMinIdleAgents()}, which
+   * capacity profiles raise ahead of and during their windows. Warm pool agents
+   * that are still launching count towards the pool since they will be idle
+   * shortly. Agents launching for queued jobs do not, those jobs take them.
+   * Called periodically by {@link CodeBuildWarmPoolWork}.
+   */
+  synchronized void maintainWarmPool() {
+    int minIdle = getEffectiveMinIdleAgents();
+    if (minIdle <= 0 || !isCodeBuildAvailable()) {
+      return;
+    }
 
+    CodeBuildAgentRegistry registry = getAgentRegistry();
+    long deficit = minIdle - (countIdleWarmAgents() + registry.countWarm(CodeBuildAgentRegistry.State.PROVISIONING));
+    if (deficit <= 0) {
+      return;
+    }
+
+    // Same limits as regular provisioning - maxAgents, the project's
+    // concurrentBuildLimit and the launch pacer
+    long numToLaunch = getLaunchPacer().acquire(getLabel(), Math.min(deficit, totalCanProvision()));
+    if (numToLaunch <= 0) {
+      LOGGER.finest(String.format("Warm pool for cloud '%s' is short %s agents but no capacity is left", name,
+          deficit));
+      return;
+    }
+
+    LOGGER.info(String.format("Refilling warm pool for cloud '%s' with %s agents", name, numToLaunch));
+    for (int i = 0; i < numToLaunch; i++) {
+      // Nobody to size for yet
+      String agentComputeType = chooseComputeType(null);
+      String agentName = newAgentName();
+      createAgent(agentName, getLabel(), null, agentComputeType, executorsFor(agentComputeType));
+      registry.markWarm(agentName);
+    }
+  }
+
+  /**
+   * Whether an idle, never used agent launched for the warm pool should be kept
+   * around instead of being terminated by the retention strategy.
+   */
+  synchronized boolean shouldKeepWarm(@NonNull CodeBuildComputer computer) {
+    if (!isIdleWarm(computer) || !getAgentRegistry().isWarm(computer.getName())) {
+      return false;
+    }
+    return countIdleWarmAgents() <= getEffectiveMinIdleAgents();
   }
 
   @Extension
@@ -818,7 +1635,8 @@ public class CodeBuildCloud extends Cloud {
       final List<String> codebuildProjects = new ArrayList<String>();
 
       try {
-        CodeBuildClientWrapper client = CodeBuildClientWrapperFactory.buildClient(credentialId, region, getJenkins());
+        // Shared with the clouds - no new client and connection pool per form render
+        CodeBuildClientWrapper client = CodeBuildClientPool.borrow(credentialId, region);
         String nextToken = null;
         do {
           ListProjectsResult result = client.listProjects(new ListProjectsRequest().withNextToken(nextToken));
@@ -922,6 +1740,16 @@ public class CodeBuildCloud extends Cloud {
       return checkValue(value, "Must include a Compute Type");
     }
 
+    @POST
+    public ListBoxModel doFillMinComputeTypeItems() {
+      return doFillComputeTypeItems();
+    }
+
+    @POST
+    public ListBoxModel doFillMaxComputeTypeItems() {
+      return doFillComputeTypeItems();
+    }
+
     @POST
     public FormValidation doCheckAgentConnectTimeout(@QueryParameter String value) {
       // Realistically an agent connection needs to be above 60 seconds
@@ -940,6 +1768,116 @@ public class CodeBuildCloud extends Cloud {
       return DEFAULT_MAX_AGENTS;
     }
 
+    // Special naming convention that makes jelly work get****
+    @POST
+    public Integer getDefaultMinIdleAgents() {
+      return DEFAULT_MIN_IDLE_AGENTS;
+    }
+
+    @POST
+    public FormValidation doCheckMinIdleAgents(@QueryParameter String value) {
+      return checkValue(value, 0, Integer.MAX_VALUE, "Invalid Minimum Idle Agents Specified. ");
+    }
+
+    // Special naming convention that makes jelly work get****
+    @POST
+    public Integer getDefaultExecutorsPerAgent() {
+      return DEFAULT_EXECUTORS_PER_AGENT;
+    }
+
+    @POST
+    public FormValidation doCheckExecutorsPerAgent(@QueryParameter String value) {
+      return checkValue(value, 0, Integer.MAX_VALUE, "Invalid Executors Per Agent Specified. ");
+    }
+
+    // Special naming convention that makes jelly work get****
+    @POST
+    public Integer getDefaultReuseIdleSeconds() {
+      return DEFAULT_REUSE_IDLE_SECONDS;
+    }
+
+    @POST
+    public FormValidation doCheckReuseIdleSeconds(@QueryParameter String value) {
+      return checkValue(value, 0, Integer.MAX_VALUE, "Invalid Reuse Idle Time Specified. ");
+    }
+
+    // Special naming convention that makes jelly work get****
+    @POST
+    public Integer getDefaultReuseMaxTasks() {
+      return DEFAULT_REUSE_MAX_TASKS;
+    }
+
+    @POST
+    public FormValidation doCheckReuseMaxTasks(@QueryParameter String value) {
+      return checkValue(value, 0, Integer.MAX_VALUE, "Invalid Reuse Max Tasks Specified. ");
+    }
+
+    // Special naming convention that makes jelly work get****
+    @POST
+    public Integer getDefaultLaunchBurst() {
+      return DEFAULT_LAUNCH_BURST;
+    }
+
+    @POST
+    public FormValidation doCheckLaunchBurst(@QueryParameter String value) {
+      return checkValue(value, 1, Integer.MAX_VALUE, "Invalid Launch Burst Specified. ");
+    }
+
+    // Special naming convention that makes jelly work get****
+    @POST
+    public Integer getDefaultLaunchRefillPerMinute() {
+      return DEFAULT_LAUNCH_REFILL_PER_MINUTE;
+    }
+
+    @POST
+    public FormValidation doCheckLaunchRefillPerMinute(@QueryParameter String value) {
+      return checkValue(value, 1, Integer.MAX_VALUE, "Invalid Launch Refill Rate Specified. ");
+    }
+
+    // Special naming convention that makes jelly work get****
+    @POST
+    public Integer getDefaultSpilloverQueueSeconds() {
+      return DEFAULT_SPILLOVER_QUEUE_SECONDS;
+    }
+
+    @POST
+    public FormValidation doCheckSpilloverQueueSeconds(@QueryParameter String value) {
+      return checkValue(value, 1, Integer.MAX_VALUE, "Invalid Spillover Queue Time Specified. ");
+    }
+
+    // Special naming convention that makes jelly work get****
+    @POST
+    public Integer getDefaultRespillQueueSeconds() {
+      return DEFAULT_RESPILL_QUEUE_SECONDS;
+    }
+
+    @POST
+    public FormValidation doCheckRespillQueueSeconds(@QueryParameter String value) {
+      return checkValue(value, 0, Integer.MAX_VALUE, "Invalid Respill Queue Time Specified. ");
+    }
+
+    // Special naming convention that makes jelly work get****
+    @POST
+    public Integer getDefaultRelaunchAttempts() {
+      return DEFAULT_RELAUNCH_ATTEMPTS;
+    }
+
+    @POST
+    public FormValidation doCheckRelaunchAttempts(@QueryParameter String value) {
+      return checkValue(value, 0, 10, "Invalid Relaunch Attempts Specified. ");
+    }
+
+    @POST
+    public FormValidation doCheckRelaunchComputeTypes(@QueryParameter String value) {
+      getJenkins().checkPermission(Jenkins.ADMINISTER);
+      for (String s : splitList(value)) {
+        if (CodeBuildComputeType.fromValue(s) == null) {
+          return FormValidation.error("Unknown compute type: " + s);
+        }
+      }
+      return FormValidation.ok();
+    }
+
     @POST
     public FormValidation doCheckMaxAgents(@QueryParameter String value) {
       // Realistically an agent connection needs to be above 60 seconds
@@ -0,0 +1,89 @@
+package io.jenkins.plugins.codebuildcloud;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * The general purpose CodeBuild compute types a cloud can size agents with,
+ * smallest first. Sizes are those of the Linux container environments, see
+ * https://docs.aws.amazon.com/codebuild/latest/userguide/build-env-ref-compute-types.html
+ */
+public enum CodeBuildComputeType {
+  SMALL("BUILD_GENERAL1_SMALL", 3, 2),
+  MEDIUM("BUILD_GENERAL1_MEDIUM", 7, 4),
+  LARGE("BUILD_GENERAL1_LARGE", 15, 8),
+  XXLARGE("BUILD_GENERAL1_2XLARGE", 145, 72);
+
+  // Room to leave on top of what a job was seen using
+  private static final double HEADROOM = 1.25;
+  private static final long GIB = 1024L * 1024 * 1024;
+  // Executors per agent when derived from the compute type
+  private static final int VCPUS_PER_EXECUTOR = 2;
+  private static final int MAX_DERIVED_EXECUTORS = 16;
+
+  private final String value;
+  private final long memoryBytes;
+  private final int vcpus;
+
+  CodeBuildComputeType(String value, int memoryGib, int vcpus) {
+    this.value = value;
+    this.memoryBytes = memoryGib * GIB;
+    this.vcpus = vcpus;
+  }
+
+  /** The name CodeBuild knows this compute type by. */
+  @NonNull
+  public String getValue() {
+    return value;
+  }
+
+  /**
+   * How many executors an agent of this size runs when the cloud derives it from
+   * the compute type: one per two vCPUs, at most {@link #MAX_DERIVED_EXECUTORS}.
+   */
+  public int getDefaultExecutors() {
+    return Math.max(1, Math.min(MAX_DERIVED_EXECUTORS, vcpus / VCPUS_PER_EXECUTOR));
+  }
+
+  /** Whether a job that used this much memory and CPU fits, with headroom. */
+  public boolean fits(@NonNull CodeBuildJobHistory.Stats stats) {
+    return stats.getPeakMemoryBytes() * HEADROOM <= memoryBytes && stats.getCpuCores() * HEADROOM <= vcpus;
+  }
+
+  /** @return the compute type with this CodeBuild name, or null if it is not one of these. */
+  public static CodeBuildComputeType fromValue(String value) {
+    for (CodeBuildComputeType t : values()) {
+      if (t.value.equals(value)) {
+        return t;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * The smallest compute type between <code>min</code> and <code>max</code>
+   * that fits a job's history. <code>max</code> if none does.
+   */
+  @NonNull
+  public static CodeBuildComputeType choose(@NonNull CodeBuildJobHistory.Stats stats,
+      @NonNull CodeBuildComputeType min, @NonNull CodeBuildComputeType max) {
+    for (CodeBuildComputeType t : values()) {
+      if (t.compareTo(min) >= 0 && t.compareTo(max) <= 0 && t.fits(stats)) {
+        return t;
+      }
+    }
+    return max;
+  }
+
+  /** <code>type</code> moved into the range between <code>min</code> and <code>max</code>. */
+  @NonNull
+  public static CodeBuildComputeType clamp(@NonNull CodeBuildComputeType type, @NonNull CodeBuildComputeType min,
+      @NonNull CodeBuildComputeType max) {
+    if (type.compareTo(min) < 0) {
+      return min;
+    }
+    if (type.compareTo(max) > 0) {
+      return max;
+    }
+    return type;
+  }
+}
@@ -1,10 +1,16 @@
 package io.jenkins.plugins.codebuildcloud;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import hudson.model.Computer;
 import hudson.model.Executor;
 import hudson.model.Queue;
+import hudson.remoting.VirtualChannel;
 import hudson.slaves.AbstractCloudComputer;
 
 public class CodeBuildComputer extends AbstractCloudComputer<CodeBuildAgent> {
@@ -12,6 +18,14 @@ public class CodeBuildComputer extends AbstractCloudComputer<CodeBuildAgent> {
   private static final Logger LOGGER = Logger.getLogger(CodeBuildComputer.class.getName());
   private String buildId;
   private boolean completedWithoutErrors;
+  private volatile boolean acceptedTask;
+  private final AtomicInteger completedTasks = new AtomicInteger();
+  private volatile CodeBuildLaunchTarget launchTarget;
+  private transient volatile CompletableFuture<CodeBuildResourceProbe.Usage> usageAtStart;
+  private volatile CodeBuildLaunchTimeline launchTimeline;
+
+  // The agent is torn down right after its task, so do not wait long for it
+  private static final long PROBE_TIMEOUT_SECONDS = 5;
 
   public CodeBuildComputer(CodeBuildAgent agent) {
     super(agent);
@@ -28,15 +42,86 @@ public class CodeBuildComputer extends AbstractCloudComputer<CodeBuildAgent> {
     return completedWithoutErrors;
   }
 
+  // False while the agent is still part of the warm pool
+  boolean hasAcceptedTask() {
+    return acceptedTask;
+  }
+
+  // Null until the launcher picked a target
+  CodeBuildLaunchTarget getLaunchTarget() {
+    return launchTarget;
+  }
+
+  // Tasks run so far, more than one in reuse mode
+  int getCompletedTasks() {
+    return completedTasks.get();
+  }
+
+  /** When the steps of launching this agent happened, null before its launch. */
+  public CodeBuildLaunchTimeline getLaunchTimeline() {
+    return launchTimeline;
+  }
+
+  /**
+   * How long launch steps take across this agent's cloud, null once the agent
+   * has been restored from disk.
+   */
+  public CodeBuildLaunchStats getLaunchStats() {
+    CodeBuildAgent node = getNode();
+    // The cloud is transient - not there for agents restored from disk
+    return node == null || node.cloud == null ? null : node.cloud.getLaunchStats();
+  }
+
+  /** Why launches failed across this agent's cloud, null like {@link #getLaunchStats()}. */
+  public CodeBuildLaunchFailures getLaunchFailures() {
+    CodeBuildAgent node = getNode();
+    return node == null || node.cloud == null ? null : node.cloud.getLaunchFailures();
+  }
+
+  /** How busy this agent's cloud's launch executor is, null like {@link #getLaunchStats()}. */
+  public CodeBuildLaunchExecutor getLaunchExecutor() {
+    CodeBuildAgent node = getNode();
+    return node == null || node.cloud == null ? null : node.cloud.getLaunchExecutor();
+  }
+
+  // Every launch starts a new timeline
+  CodeBuildLaunchTimeline newLaunchTimeline() {
+    launchTimeline = new CodeBuildLaunchTimeline();
+    return launchTimeline;
+  }
+
   // Package levl visibility
   void setBuildId(String buildId) {
     this.buildId = buildId;
   }
 
+  void setLaunchTarget(CodeBuildLaunchTarget launchTarget) {
+    this.launchTarget = launchTarget;
+  }
+
+  void transition(CodeBuildAgentRegistry.State state) {
+    CodeBuildAgent node = getNode();
+    if (node != null) {
+      CodeBuildAgentRegistry registry = node.getAgentRegistry();
+      if (registry != null) {
+        registry.transition(getName(), state);
+      }
+    }
+  }
+
   /** {@inheritDoc} */
   @Override
   public void taskAccepted(Executor executor, Queue.Task task) {
     super.taskAccepted(executor, task);
+    acceptedTask = true;
+    transition(CodeBuildAgentRegistry.State.BUSY);
+    usageAtStart = hasOwnUsage() ? probeUsage() : null;
+    CodeBuildLaunchTimeline timeline = launchTimeline;
+    CodeBuildLaunchStats stats = getLaunchStats();
+    if (timeline != null && stats != null
+        && timeline.mark(CodeBuildLaunchTimeline.FIRST_TASK, System.currentTimeMillis())) {
+      stats.record(timeline);
+    }
     LOGGER.log(Level.INFO, "[{0}]: JobName: {1}", new Object[] { this.getName(), task.getDisplayName() });
     LOGGER.log(Level.INFO, "[{0}]: JobUrl: {1}", new Object[] { this.getName(), task.getUrl() });
     LOGGER.log(Level.FINE, "[{0}]: taskAccepted", this);
@@ -45,6 +130,9 @@ public class CodeBuildComputer extends AbstractCloudComputer<CodeBuildAgent> {
   /** {@inheritDoc} */
   @Override
   public void taskCompleted(Executor executor, Queue.Task task, long durationMS) {
+    // Before the retention strategy gets to terminate the agent
+    recordUsage(task, durationMS);
+    completedTasks.incrementAndGet();
     super.taskCompleted(executor, task, durationMS);
     LOGGER.log(Level.FINE, "[{0}]: taskCompleted", this);
     completedWithoutErrors = true;
@@ -54,12 +142,84 @@ public class CodeBuildComputer extends AbstractCloudComputer<CodeBuildAgent> {
   /** {@inheritDoc} */
   @Override
   public void taskCompletedWithProblems(Executor executor, Queue.Task task, long durationMS, Throwable problems) {
+    // Failed runs count too - running out of memory is one way to fail
+    recordUsage(task, durationMS);
+    completedTasks.incrementAndGet();
     super.taskCompletedWithProblems(executor, task, durationMS, problems);
     LOGGER.severe(String.format("[%s]: Task in job '%s' completed with problems in %sms", this,
         task.getFullDisplayName(), durationMS));
     completedWithoutErrors = false;
   }
 
+  /**
+   * Whether the container's memory peak and CPU counters belong to the task
+   * alone. Not with several executors, where tasks share the container, nor on
+   * a reused agent, whose memory peak includes earlier tasks.
+   */
+  private boolean hasOwnUsage() {
+    return getNumExecutors() <= 1 && getCompletedTasks() == 0;
+  }
+
+  /** Completes with null if the agent could not be probed. */
+  private CompletableFuture<CodeBuildResourceProbe.Usage> probeUsage() {
+    VirtualChannel channel = getChannel();
+    if (channel == null) {
+      return CompletableFuture.completedFuture(null);
+    }
+    Future<CodeBuildResourceProbe.Usage> probe;
+    try {
+      probe = channel.callAsync(new CodeBuildResourceProbe());
+    } catch (Exception e) {
+      LOGGER.log(Level.FINE, String.format("[%s]: Could not probe resource usage", getName()), e);
+      return CompletableFuture.completedFuture(null);
+    }
+
+    // Remoting futures cannot be chained. Wait for it on a remoting pool thread
+    // rather than the executor's, which would hold up the end of the build.
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        return probe.get(PROBE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (Exception e) {
+        LOGGER.log(Level.FINE, String.format("[%s]: Could not probe resource usage", getName()), e);
+      }
+      return null;
+    }, Computer.threadPoolForRemoting);
+  }
+
+  /**
+   * Feeds the task's duration and resource usage into
+   * {@link CodeBuildJobHistory}, which compute type right-sizing works from.
+   * Recorded once the probes answer, without waiting for them.
+   */
+  private void recordUsage(Queue.Task task, long durationMS) {
+    CompletableFuture<CodeBuildResourceProbe.Usage> start = usageAtStart;
+    usageAtStart = null;
+    if (start == null) {
+      start = CompletableFuture.completedFuture(null);
+    }
+    String jobKey = CodeBuildJobHistory.keyFor(task);
+    if (!hasOwnUsage()) {
+      // Other tasks' usage would be counted as this job's - keep the duration only
+      CodeBuildJobHistory.get().record(jobKey, durationMS, -1, -1);
+      return;
+    }
+
+    start.thenCombine(probeUsage(), (before, after) -> {
+      long peakMemory = -1;
+      double cpuCores = -1;
+      if (after != null) {
+        peakMemory = after.getPeakMemoryBytes();
+        if (before != null && durationMS > 0 && before.getCpuNanos() >= 0 && after.getCpuNanos() >= 0) {
+          cpuCores = (after.getCpuNanos() - before.getCpuNanos()) / (durationMS * 1e6);
+        }
+      }
+      CodeBuildJobHistory.get().record(jobKey, durationMS, peakMemory, cpuCores);
+      return null;
+    });
+  }
+
   /** {@inheritDoc} */
   @Override
   public String toString() {
@@ -0,0 +1,28 @@
+package io.jenkins.plugins.codebuildcloud;
+
+import hudson.Extension;
+import hudson.model.Computer;
+import hudson.model.TaskListener;
+import hudson.slaves.ComputerLauncher;
+import hudson.slaves.ComputerListener;
+
+/**
+ * Completes the launch of a {@link CodeBuildAgent} as soon as its agent
+ * connects, instead of the launcher polling {@link Computer#isOnline()}.
+ */
+@Extension
+public class CodeBuildComputerListener extends ComputerListener {
+
+  /** {@inheritDoc} */
+  @Override
+  public void onOnline(Computer c, TaskListener listener) {
+    if (!(c instanceof CodeBuildComputer)) {
+      return;
+    }
+
+    ComputerLauncher launcher = ((CodeBuildComputer) c).getLauncher();
+    if (launcher instanceof CodeBuildLauncher) {
+      ((CodeBuildLauncher) launcher).agentOnline();
+    }
+  }
+}
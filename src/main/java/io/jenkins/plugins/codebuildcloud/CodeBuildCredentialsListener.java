@@ -0,0 +1,24 @@
+package io.jenkins.plugins.codebuildcloud;
+
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+
+/**
+ * Notices when the system credentials are saved, so anything built from
+ * credentials and cached by this plugin is rebuilt on next use.
+ */
+@Extension
+public class CodeBuildCredentialsListener extends SaveableListener {
+
+  /** {@inheritDoc} */
+  @Override
+  public void onChange(Saveable o, XmlFile file) {
+    if (o instanceof SystemCredentialsProvider) {
+      CodeBuildClientPool.credentialsChanged();
+    }
+  }
+}
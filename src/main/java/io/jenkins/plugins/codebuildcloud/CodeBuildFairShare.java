@@ -0,0 +1,122 @@
+package io.jenkins.plugins.codebuildcloud;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Splits a cloud's agents between the labels it serves. Every label first gets
+ * its guaranteed minimum, as far as it has work for it. What is left is shared
+ * in proportion to the labels' weights - a label that needs less than its share
+ * gets what it needs and the rest is shared among the others. No label gets
+ * more than its maximum.
+ */
+public class CodeBuildFairShare {
+
+  /** What one label has running, is waiting for and is entitled to. */
+  public static final class Demand {
+    final String label;
+    final int running;
+    final int queued;
+    final int min;
+    final int max;
+    final int weight;
+
+    /**
+     * @param max 0 for no maximum.
+     */
+    public Demand(@NonNull String label, int running, int queued, int min, int max, int weight) {
+      this.label = label;
+      this.running = Math.max(0, running);
+      this.queued = Math.max(0, queued);
+      this.min = Math.max(0, min);
+      this.max = Math.max(0, max);
+      this.weight = Math.max(1, weight);
+    }
+
+    /** Agents this label could use right now. */
+    int need() {
+      long need = (long) running + queued;
+      return (int) (max > 0 ? Math.min(max, need) : Math.min(Integer.MAX_VALUE, need));
+    }
+  }
+
+  private CodeBuildFairShare() {
+  }
+
+  /**
+   * @param capacity agents the cloud may have in total, running ones included.
+   * @return how many agents each label may have in total.
+   */
+  @NonNull
+  public static Map<String, Integer> allocate(int capacity, @NonNull List<Demand> demands) {
+    Map<String, Double> alloc = new HashMap<String, Double>();
+    double remaining = capacity;
+
+    // Guarantees first
+    for (Demand d : demands) {
+      double guaranteed = Math.min(d.min, d.need());
+      alloc.put(d.label, guaranteed);
+      remaining -= guaranteed;
+    }
+
+    // Then weighted shares of the rest. Labels that need less than their share
+    // drop out, and the next round splits what they left.
+    List<Demand> hungry = new ArrayList<Demand>();
+    for (Demand d : demands) {
+      if (alloc.get(d.label) < d.need()) {
+        hungry.add(d);
+      }
+    }
+    while (remaining > 0 && !hungry.isEmpty()) {
+      double totalWeight = 0;
+      for (Demand d : hungry) {
+        totalWeight += d.weight;
+      }
+
+      List<Demand> sated = new ArrayList<Demand>();
+      double handedOut = 0;
+      for (Demand d : hungry) {
+        double share = remaining * d.weight / totalWeight;
+        double missing = d.need() - alloc.get(d.label);
+        if (missing <= share) {
+          alloc.put(d.label, (double) d.need());
+          handedOut += missing;
+          sated.add(d);
+        }
+      }
+
+      if (sated.isEmpty()) {
+        // Everyone wants more than their share - split what is left and stop
+        for (Demand d : hungry) {
+          alloc.put(d.label, alloc.get(d.label) + remaining * d.weight / totalWeight);
+        }
+        break;
+      }
+      remaining -= handedOut;
+      hungry.removeAll(sated);
+    }
+
+    // Whole agents. What rounding down leaves over goes to the largest fractions.
+    Map<String, Integer> result = new HashMap<String, Integer>();
+    double total = 0;
+    int whole = 0;
+    List<Map.Entry<String, Double>> byFraction = new ArrayList<Map.Entry<String, Double>>(alloc.entrySet());
+    for (Map.Entry<String, Double> e : byFraction) {
+      int floor = (int) Math.floor(e.getValue());
+      result.put(e.getKey(), floor);
+      total += e.getValue();
+      whole += floor;
+    }
+    byFraction.sort((a, b) -> Double.compare(b.getValue() - Math.floor(b.getValue()),
+        a.getValue() - Math.floor(a.getValue())));
+    int leftover = (int) Math.round(total) - whole;
+    for (int i = 0; i < leftover && i < byFraction.size(); i++) {
+      result.merge(byFraction.get(i).getKey(), 1, Integer::sum);
+    }
+    return result;
+  }
+}
@@ -0,0 +1,104 @@
+package io.jenkins.plugins.codebuildcloud;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.Item;
+import hudson.model.Queue;
+
+/**
+ * How long jobs ran on CodeBuild agents and how much memory and CPU they used,
+ * so {@link CodeBuildCloud} can pick a compute type for their next run.
+ *
+ * Durations are moving averages. Memory and CPU keep the highest value seen,
+ * decaying slowly so a job that slimmed down is eventually moved to a smaller
+ * compute type again. Kept in memory only - after a restart jobs start over at
+ * the cloud's configured compute type.
+ */
+public class CodeBuildJobHistory {
+
+  private static final Logger LOGGER = Logger.getLogger(CodeBuildJobHistory.class.getName());
+
+  private static final CodeBuildJobHistory INSTANCE = new CodeBuildJobHistory();
+
+  // Weight of the newest duration
+  private static final double ALPHA = 0.3;
+  // How much of the previous peak is kept when a run uses less
+  private static final double PEAK_DECAY = 0.8;
+
+  /** What a job was seen using. Immutable. */
+  public static final class Stats {
+    private final long durationMs;
+    private final long peakMemoryBytes;
+    private final double cpuCores;
+
+    Stats(long durationMs, long peakMemoryBytes, double cpuCores) {
+      this.durationMs = durationMs;
+      this.peakMemoryBytes = peakMemoryBytes;
+      this.cpuCores = cpuCores;
+    }
+
+    public long getDurationMs() {
+      return durationMs;
+    }
+
+    public long getPeakMemoryBytes() {
+      return peakMemoryBytes;
+    }
+
+    /** Average number of cores busy while the job ran. */
+    public double getCpuCores() {
+      return cpuCores;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("duration %sms, peak memory %sMiB, cpu %.1f cores", durationMs,
+          peakMemoryBytes / (1024 * 1024), cpuCores);
+    }
+  }
+
+  private final ConcurrentMap<String, Stats> stats = new ConcurrentHashMap<String, Stats>();
+
+  // Tests use their own
+  CodeBuildJobHistory() {
+  }
+
+  @NonNull
+  public static CodeBuildJobHistory get() {
+    return INSTANCE;
+  }
+
+  /** Identifies the job a task belongs to across its builds. */
+  @NonNull
+  public static String keyFor(@NonNull Queue.Task task) {
+    Queue.Task owner = task.getOwnerTask();
+    if (owner instanceof Item) {
+      return ((Item) owner).getFullName();
+    }
+    return owner.getFullDisplayName();
+  }
+
+  /**
+   * Adds a run of a job.
+   *
+   * @param peakMemoryBytes negative if the agent could not tell.
+   * @param cpuCores negative if the agent could not tell.
+   */
+  public void record(@NonNull String key, long durationMs, long peakMemoryBytes, double cpuCores) {
+    Stats updated = stats.merge(key, new Stats(durationMs, Math.max(0, peakMemoryBytes), Math.max(0, cpuCores)),
+        (old, run) -> new Stats(
+            Math.round(ALPHA * run.durationMs + (1 - ALPHA) * old.durationMs),
+            peakMemoryBytes < 0 ? old.peakMemoryBytes
+                : Math.max(run.peakMemoryBytes, Math.round(old.peakMemoryBytes * PEAK_DECAY)),
+            cpuCores < 0 ? old.cpuCores : Math.max(run.cpuCores, old.cpuCores * PEAK_DECAY)));
+    LOGGER.finest(String.format("Job '%s': %s", key, updated));
+  }
+
+  /** @return what the job was seen using so far, or null if it never ran on CodeBuild. */
+  public Stats get(String key) {
+    return key == null ? null : stats.get(key);
+  }
+}
@@ -0,0 +1,133 @@
+package io.jenkins.plugins.codebuildcloud;
+
+import org.apache.commons.lang.StringUtils;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.verb.POST;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Descriptor;
+import hudson.util.FormValidation;
+import jenkins.model.Jenkins;
+
+/**
+ * How much of a {@link CodeBuildCloud}'s capacity jobs with one label
+ * expression are guaranteed, may use at most, and how they share the rest with
+ * other labels. See {@link CodeBuildFairShare}.
+ *
+ * Quotas only decide how many agents are launched on behalf of each label
+ * expression. Every agent carries the cloud's label, so once it is up it takes
+ * jobs of any expression that label satisfies, not just the one it was
+ * launched for.
+ */
+public class CodeBuildLabelQuota extends AbstractDescribableImpl<CodeBuildLabelQuota> {
+
+  private static final Integer DEFAULT_WEIGHT = 1;
+
+  @NonNull
+  private String label;
+
+  private Integer minAgents;
+
+  private Integer maxAgents;
+
+  private Integer weight;
+
+  @DataBoundConstructor
+  public CodeBuildLabelQuota(@NonNull String label) {
+    this.label = label;
+  }
+
+  @NonNull
+  public String getLabel() {
+    return label;
+  }
+
+  @NonNull
+  public Integer getMinAgents() {
+    return minAgents == null ? 0 : minAgents;
+  }
+
+  @DataBoundSetter
+  public void setMinAgents(Integer minAgents) {
+    this.minAgents = minAgents;
+  }
+
+  /** 0 for no maximum besides the cloud's. */
+  @NonNull
+  public Integer getMaxAgents() {
+    return maxAgents == null ? 0 : maxAgents;
+  }
+
+  @DataBoundSetter
+  public void setMaxAgents(Integer maxAgents) {
+    this.maxAgents = maxAgents;
+  }
+
+  @NonNull
+  public Integer getWeight() {
+    return weight == null || weight < 1 ? DEFAULT_WEIGHT : weight;
+  }
+
+  @DataBoundSetter
+  public void setWeight(Integer weight) {
+    this.weight = weight;
+  }
+
+  @Extension
+  public static class DescriptorImpl extends Descriptor<CodeBuildLabelQuota> {
+
+    @POST
+    public FormValidation doCheckLabel(@QueryParameter String value) {
+      CodeBuildCloud.getJenkins().checkPermission(Jenkins.ADMINISTER);
+      if (StringUtils.isBlank(value)) {
+        return FormValidation.error("Must include a label");
+      }
+      return FormValidation.ok();
+    }
+
+    @POST
+    public FormValidation doCheckMinAgents(@QueryParameter String value) {
+      return checkAtLeast(value, 0, "Invalid Minimum Agents Specified. ");
+    }
+
+    @POST
+    public FormValidation doCheckMaxAgents(@QueryParameter String value) {
+      return checkAtLeast(value, 0, "Invalid Max Agent Specified. ");
+    }
+
+    @POST
+    public FormValidation doCheckWeight(@QueryParameter String value) {
+      return checkAtLeast(value, 1, "Weight must be a whole number of at least 1");
+    }
+
+    private FormValidation checkAtLeast(String value, int min, String error) {
+      CodeBuildCloud.getJenkins().checkPermission(Jenkins.ADMINISTER);
+      if (StringUtils.isBlank(value)) {
+        return FormValidation.ok(); // Optional
+      }
+      try {
+        if (Integer.parseInt(value) >= min) {
+          return FormValidation.ok();
+        }
+      } catch (NumberFormatException e) {
+        // Fall through
+      }
+      return FormValidation.error(error);
+    }
+
+    // Special naming convention that makes jelly work get****
+    @POST
+    public Integer getDefaultWeight() {
+      return DEFAULT_WEIGHT;
+    }
+
+    @Override
+    public String getDisplayName() {
+      return "Label Quota";
+    }
+  }
+}
@@ -0,0 +1,138 @@
+package io.jenkins.plugins.codebuildcloud;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.security.ACL;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.security.ImpersonatingExecutorService;
+import jenkins.util.SystemProperties;
+
+/**
+ * Bounded executor for the blocking work of launching and terminating
+ * CodeBuild agents, one per {@link CodeBuildCloud}. Keeps bursts of launches
+ * from starving {@link hudson.model.Computer#threadPoolForRemoting}, which the
+ * rest of the controller depends on.
+ *
+ * Runs on virtual threads when the JVM supports them, platform threads
+ * otherwise. Either way at most {@link #getMaxConcurrency()} tasks run at once
+ * and the rest wait their turn.
+ *
+ * Kept per cloud name, like {@link CodeBuildAgentRegistry}, so the bound still
+ * holds across configuration saves, which replace the cloud. Its counters are
+ * shown on the agent page.
+ */
+public class CodeBuildLaunchExecutor {
+
+  private static final Logger LOGGER = Logger.getLogger(CodeBuildLaunchExecutor.class.getName());
+
+  private static final ConcurrentMap<String, CodeBuildLaunchExecutor> EXECUTORS = new ConcurrentHashMap<String, CodeBuildLaunchExecutor>();
+
+  static final int DEFAULT_MAX_CONCURRENCY = SystemProperties
+      .getInteger(CodeBuildLaunchExecutor.class.getName() + ".maxConcurrency", 64);
+
+  private final String name;
+  private final int maxConcurrency;
+  private final boolean virtualThreads;
+  private final ExecutorService executor;
+  private final Semaphore permits;
+  private final AtomicInteger queued = new AtomicInteger();
+  private final AtomicLong saturatedSubmissions = new AtomicLong();
+
+  public CodeBuildLaunchExecutor(@NonNull String name, int maxConcurrency) {
+    this.name = name;
+    this.maxConcurrency = Math.max(1, maxConcurrency);
+    this.permits = new Semaphore(this.maxConcurrency);
+
+    ExecutorService base = newVirtualThreadExecutor();
+    this.virtualThreads = base != null;
+    if (base == null) {
+      ThreadPoolExecutor pool = new ThreadPoolExecutor(this.maxConcurrency, this.maxConcurrency, 60, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<Runnable>(),
+          new NamingThreadFactory(new DaemonThreadFactory(), "CodeBuild launcher [" + name + "]"));
+      // Nothing to shut down when the cloud is reconfigured - idle threads just go away
+      pool.allowCoreThreadTimeOut(true);
+      base = pool;
+    }
+    this.executor = new ImpersonatingExecutorService(base, ACL.SYSTEM2);
+  }
+
+  @NonNull
+  static CodeBuildLaunchExecutor forCloud(@NonNull String cloudName) {
+    return EXECUTORS.computeIfAbsent(cloudName, n -> new CodeBuildLaunchExecutor(n, DEFAULT_MAX_CONCURRENCY));
+  }
+
+  /**
+   * Java 21+ only, and this plugin still builds for older JVMs - so look it up
+   * reflectively.
+   */
+  private static ExecutorService newVirtualThreadExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return null;
+    }
+  }
+
+  public <T> Future<T> submit(@NonNull Callable<T> task) {
+    if (permits.availablePermits() == 0) {
+      saturatedSubmissions.incrementAndGet();
+      LOGGER.log(Level.FINE, "Launch executor for cloud ''{0}'' is saturated, {1} tasks waiting",
+          new Object[] { name, queued.get() + 1 });
+    }
+
+    queued.incrementAndGet();
+    return executor.submit(() -> {
+      permits.acquire();
+      queued.decrementAndGet();
+      try {
+        return task.call();
+      } finally {
+        permits.release();
+      }
+    });
+  }
+
+  public Future<Object> submit(@NonNull Runnable task) {
+    return submit(Executors.callable(task));
+  }
+
+  // Metrics
+
+  public int getMaxConcurrency() {
+    return maxConcurrency;
+  }
+
+  /** Tasks running right now. */
+  public int getActiveCount() {
+    return maxConcurrency - permits.availablePermits();
+  }
+
+  /** Tasks waiting for a free slot. */
+  public int getQueuedCount() {
+    return queued.get();
+  }
+
+  /** How many tasks were submitted while every slot was busy. */
+  public long getSaturatedSubmissions() {
+    return saturatedSubmissions.get();
+  }
+
+  public boolean isVirtualThreads() {
+    return virtualThreads;
+  }
+}
@@ -0,0 +1,262 @@
+package io.jenkins.plugins.codebuildcloud;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.amazonaws.services.codebuild.model.AccountLimitExceededException;
+import com.amazonaws.services.codebuild.model.Build;
+import com.amazonaws.services.codebuild.model.BuildPhase;
+import com.amazonaws.services.codebuild.model.PhaseContext;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Why a cloud's agents failed to launch, and what was done about it. Each
+ * failure is given a {@link Reason}, which also decides how the launcher may
+ * relaunch the agent, see {@link Fallback}.
+ *
+ * Kept per cloud name, like {@link CodeBuildLaunchStats}, so it survives
+ * configuration saves.
+ */
+public class CodeBuildLaunchFailures {
+
+  private static final ConcurrentMap<String, CodeBuildLaunchFailures> FAILURES = new ConcurrentHashMap<String, CodeBuildLaunchFailures>();
+
+  // Recent failures kept for the agent page
+  static final int MAX_RECENT = 50;
+
+  // CodeBuild's phase for pulling the image and setting up the container
+  private static final String PROVISIONING = "PROVISIONING";
+
+  /** What to change for the next try. */
+  public enum Fallback {
+    /** The same compute type and image again. */
+    RETRY,
+    /** The next fallback compute type, or the same again once there is none. */
+    COMPUTE_TYPE,
+    /** The next fallback image, or the same again once there is none. */
+    IMAGE,
+    /** Not relaunched. */
+    NONE
+  }
+
+  public enum Reason {
+    // CodeBuildApiGuard already retried these before giving up
+    START_BUILD_THROTTLED("StartBuild throttled", Fallback.NONE),
+    START_BUILD_ERROR("StartBuild failed", Fallback.NONE),
+    // Concurrent build limits are per compute type
+    START_BUILD_LIMITED("Concurrent build limit reached", Fallback.COMPUTE_TYPE),
+    // Access denied, unknown project, bad overrides - no compute type fixes those
+    START_BUILD_REJECTED("StartBuild rejected", Fallback.NONE),
+    CODEBUILD_UNAVAILABLE("CodeBuild unavailable", Fallback.NONE),
+    BUILD_FAULT("Build fault", Fallback.RETRY),
+    PROVISIONING_FAILED("Provisioning failed", Fallback.IMAGE),
+    BUILD_FAILED("Build failed", Fallback.COMPUTE_TYPE),
+    // Stopped by someone else, or the buildspec ended without starting the agent
+    BUILD_ENDED("Build ended", Fallback.NONE),
+    CONNECT_TIMEOUT("Agent did not connect", Fallback.NONE);
+
+    private final String displayName;
+    private final Fallback fallback;
+
+    Reason(String displayName, Fallback fallback) {
+      this.displayName = displayName;
+      this.fallback = fallback;
+    }
+
+    @NonNull
+    public String getDisplayName() {
+      return displayName;
+    }
+
+    @NonNull
+    public Fallback getFallback() {
+      return fallback;
+    }
+  }
+
+  /** One failed launch attempt. */
+  public static final class Failure {
+    private final long time;
+    private final Reason reason;
+    private final String agentName;
+    private final String buildId;
+    private final String detail;
+    private final String action;
+
+    Failure(long time, Reason reason, String agentName, String buildId, String detail, String action) {
+      this.time = time;
+      this.reason = reason;
+      this.agentName = agentName;
+      this.buildId = buildId;
+      this.detail = detail;
+      this.action = action;
+    }
+
+    @NonNull
+    public Date getTime() {
+      return new Date(time);
+    }
+
+    @NonNull
+    public Reason getReason() {
+      return reason;
+    }
+
+    public String getAgentName() {
+      return agentName;
+    }
+
+    /** Null if StartBuild failed. */
+    public String getBuildId() {
+      return buildId;
+    }
+
+    public String getDetail() {
+      return detail;
+    }
+
+    /** What the launcher did about it. */
+    public String getAction() {
+      return action;
+    }
+  }
+
+  /** How often one reason came up. */
+  public static final class Count {
+    private final Reason reason;
+    private final long count;
+
+    Count(Reason reason, long count) {
+      this.reason = reason;
+      this.count = count;
+    }
+
+    @NonNull
+    public Reason getReason() {
+      return reason;
+    }
+
+    public long getCount() {
+      return count;
+    }
+  }
+
+  private final Map<Reason, Long> counts = new EnumMap<Reason, Long>(Reason.class);
+  private final Deque<Failure> recent = new ArrayDeque<Failure>();
+
+  // Tests build their own
+  CodeBuildLaunchFailures() {
+  }
+
+  @NonNull
+  static CodeBuildLaunchFailures forCloud(@NonNull String cloudName) {
+    return FAILURES.computeIfAbsent(cloudName, n -> new CodeBuildLaunchFailures());
+  }
+
+  /** Why StartBuild failed. */
+  @NonNull
+  public static Reason classify(@NonNull Throwable e) {
+    e = CodeBuildClientWrapper.unwrap(e);
+    if (e instanceof CodeBuildApiGuard.CircuitOpenException) {
+      return Reason.CODEBUILD_UNAVAILABLE;
+    }
+    if (e instanceof AccountLimitExceededException) {
+      return Reason.START_BUILD_LIMITED;
+    }
+    switch (CodeBuildApiGuard.classify(e)) {
+      case THROTTLE:
+        return Reason.START_BUILD_THROTTLED;
+      case TRANSIENT:
+        return Reason.START_BUILD_ERROR;
+      default:
+        return Reason.START_BUILD_REJECTED;
+    }
+  }
+
+  /** Why a build finished before its agent connected. */
+  @NonNull
+  public static Reason classify(@NonNull Build build) {
+    String status = build.getBuildStatus();
+    if (CodeBuildClientWrapper.CodeBuildStatus.FAULT.name().equals(status)) {
+      return Reason.BUILD_FAULT;
+    }
+    if (CodeBuildClientWrapper.CodeBuildStatus.FAILED.name().equals(status)
+        || CodeBuildClientWrapper.CodeBuildStatus.TIMED_OUT.name().equals(status)) {
+      BuildPhase failed = failedPhase(build);
+      String phase = failed == null ? build.getCurrentPhase() : failed.getPhaseType();
+      return PROVISIONING.equals(phase) ? Reason.PROVISIONING_FAILED : Reason.BUILD_FAILED;
+    }
+    return Reason.BUILD_ENDED;
+  }
+
+  /**
+   * The build's status, the phase it failed in and what CodeBuild says about
+   * it, e.g. <code>FAILED in PROVISIONING: CLIENT_ERROR: ...</code>.
+   */
+  @NonNull
+  public static String describe(@NonNull Build build) {
+    StringBuilder sb = new StringBuilder(String.valueOf(build.getBuildStatus()));
+    BuildPhase failed = failedPhase(build);
+    if (failed == null) {
+      if (build.getCurrentPhase() != null) {
+        sb.append(" in ").append(build.getCurrentPhase());
+      }
+      return sb.toString();
+    }
+    sb.append(" in ").append(failed.getPhaseType());
+    if (failed.getContexts() != null) {
+      for (PhaseContext c : failed.getContexts()) {
+        sb.append(": ").append(c.getStatusCode()).append(": ").append(c.getMessage());
+      }
+    }
+    return sb.toString();
+  }
+
+  // The last phase that did not succeed
+  private static BuildPhase failedPhase(@NonNull Build build) {
+    BuildPhase failed = null;
+    if (build.getPhases() != null) {
+      for (BuildPhase p : build.getPhases()) {
+        String status = p.getPhaseStatus();
+        if (status != null && !"SUCCEEDED".equals(status) && !"IN_PROGRESS".equals(status)) {
+          failed = p;
+        }
+      }
+    }
+    return failed;
+  }
+
+  public synchronized void record(@NonNull Reason reason, String agentName, String buildId, String detail,
+      String action) {
+    counts.merge(reason, 1L, Long::sum);
+    recent.addFirst(new Failure(System.currentTimeMillis(), reason, agentName, buildId, detail, action));
+    while (recent.size() > MAX_RECENT) {
+      recent.removeLast();
+    }
+  }
+
+  /** How often each reason came up, most common first. */
+  @NonNull
+  public synchronized List<Count> getCounts() {
+    List<Count> list = new ArrayList<Count>();
+    for (Map.Entry<Reason, Long> e : counts.entrySet()) {
+      list.add(new Count(e.getKey(), e.getValue()));
+    }
+    list.sort((a, b) -> Long.compare(b.count, a.count));
+    return list;
+  }
+
+  /** The latest failures, newest first. */
+  @NonNull
+  public synchronized List<Failure> getRecent() {
+    return new ArrayList<Failure>(recent);
+  }
+}
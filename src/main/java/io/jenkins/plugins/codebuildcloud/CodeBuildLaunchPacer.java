@@ -0,0 +1,86 @@
+package io.jenkins.plugins.codebuildcloud;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Token bucket that paces agent launches, with one bucket per label. Each
+ * bucket starts full so a burst of queued jobs is launched in one go, then
+ * refills at a steady rate.
+ *
+ * Kept per cloud name, like {@link CodeBuildAgentRegistry}, so saving the
+ * configuration does not refill the buckets.
+ */
+public class CodeBuildLaunchPacer {
+
+  private static final ConcurrentMap<String, CodeBuildLaunchPacer> PACERS = new ConcurrentHashMap<String, CodeBuildLaunchPacer>();
+
+  private volatile int burst;
+  private volatile double refillPerNano;
+  private final LongSupplier clock;
+  private final ConcurrentMap<String, Bucket> buckets = new ConcurrentHashMap<String, Bucket>();
+
+  public CodeBuildLaunchPacer(int burst, int refillPerMinute) {
+    this(burst, refillPerMinute, System::nanoTime);
+  }
+
+  // Tests supply their own clock
+  CodeBuildLaunchPacer(int burst, int refillPerMinute, @NonNull LongSupplier clock) {
+    this.clock = clock;
+    configure(burst, refillPerMinute);
+  }
+
+  /** Gets the pacer of this cloud, with its current settings. */
+  @NonNull
+  static CodeBuildLaunchPacer forCloud(@NonNull String cloudName, int burst, int refillPerMinute) {
+    CodeBuildLaunchPacer pacer = PACERS.computeIfAbsent(cloudName,
+        n -> new CodeBuildLaunchPacer(burst, refillPerMinute));
+    pacer.configure(burst, refillPerMinute);
+    return pacer;
+  }
+
+  /** Changes the settings, buckets keep the permits they have up to the new burst. */
+  void configure(int burst, int refillPerMinute) {
+    this.burst = Math.max(1, burst);
+    this.refillPerNano = (double) Math.max(1, refillPerMinute) / TimeUnit.MINUTES.toNanos(1);
+  }
+
+  /**
+   * Takes up to <code>requested</code> launch permits for the given label.
+   *
+   * @return how many launches may go ahead now, between 0 and requested.
+   */
+  public long acquire(@NonNull String label, long requested) {
+    if (requested <= 0) {
+      return 0;
+    }
+    return buckets.computeIfAbsent(label, l -> new Bucket(burst, clock.getAsLong())).take(requested);
+  }
+
+  private class Bucket {
+    private double tokens;
+    private long lastRefill;
+
+    Bucket(double tokens, long now) {
+      this.tokens = tokens;
+      this.lastRefill = now;
+    }
+
+    synchronized long take(long requested) {
+      refill();
+      long granted = Math.min(requested, (long) Math.floor(tokens));
+      tokens -= granted;
+      return granted;
+    }
+
+    private void refill() {
+      long now = clock.getAsLong();
+      tokens = Math.min(burst, tokens + (now - lastRefill) * refillPerNano);
+      lastRefill = now;
+    }
+  }
+}
@@ -0,0 +1,111 @@
+package io.jenkins.plugins.codebuildcloud;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import jenkins.util.SystemProperties;
+
+/**
+ * Orders the queue items a {@link CodeBuildCloud} could launch agents for, most
+ * important first, for when there is not enough capacity for all of them.
+ *
+ * Importance is the item's position in the Jenkins queue, which the configured
+ * queue sorter (for example the Priority Sorter plugin) decides. Every
+ * {@link #AGING_SECONDS} an item waits moves it up one position, so low
+ * priority work is not starved forever.
+ */
+public class CodeBuildLaunchPriority {
+
+  static final long AGING_SECONDS = SystemProperties
+      .getLong(CodeBuildLaunchPriority.class.getName() + ".agingSeconds", 60L);
+
+  /** A queue item waiting for an agent. */
+  public static final class Candidate {
+    final String label;
+    final String jobKey;
+    final int position;
+    final long inQueueSince;
+
+    public Candidate(@NonNull String label, @NonNull String jobKey, int position, long inQueueSince) {
+      this.label = label;
+      this.jobKey = jobKey;
+      this.position = position;
+      this.inQueueSince = inQueueSince;
+    }
+
+    @NonNull
+    public String getLabel() {
+      return label;
+    }
+
+    @NonNull
+    public String getJobKey() {
+      return jobKey;
+    }
+
+    double score(long now, long agingSeconds) {
+      double waitedSeconds = Math.max(0, now - inQueueSince) / 1000.0;
+      return position - waitedSeconds / agingSeconds;
+    }
+  }
+
+  private CodeBuildLaunchPriority() {
+  }
+
+  /** @return the candidates, most important first. */
+  @NonNull
+  public static List<Candidate> order(@NonNull List<Candidate> candidates, long now) {
+    return order(candidates, now, AGING_SECONDS);
+  }
+
+  // Tests pick their own aging
+  @NonNull
+  static List<Candidate> order(@NonNull List<Candidate> candidates, long now, long agingSeconds) {
+    long aging = Math.max(1, agingSeconds);
+    List<Candidate> ordered = new ArrayList<Candidate>(candidates);
+    ordered.sort(Comparator.<Candidate>comparingDouble(c -> c.score(now, aging))
+        .thenComparingInt(c -> c.position));
+    return ordered;
+  }
+
+  /**
+   * The candidates no executor is on the way for yet, still in order. Each
+   * label's executors still provisioning go to its most important candidates.
+   *
+   * @param provisioning executors still provisioning, by label.
+   */
+  @NonNull
+  public static List<Candidate> uncovered(@NonNull List<Candidate> ordered,
+      @NonNull Map<String, Integer> provisioning) {
+    Map<String, Integer> left = new HashMap<String, Integer>(provisioning);
+    List<Candidate> uncovered = new ArrayList<Candidate>();
+    for (Candidate c : ordered) {
+      int n = left.getOrDefault(c.label, 0);
+      if (n > 0) {
+        left.put(c.label, n - 1);
+      } else {
+        uncovered.add(c);
+      }
+    }
+    return uncovered;
+  }
+
+  /**
+   * How many of the <code>capacity</code> most important candidates are for
+   * this label. Candidates and capacity are both counted in executors.
+   */
+  public static int countForLabel(@NonNull List<Candidate> ordered, @NonNull String label, long capacity) {
+    int count = 0;
+    long end = Math.min(ordered.size(), Math.max(0, capacity));
+    for (int i = 0; i < end; i++) {
+      if (ordered.get(i).label.equals(label)) {
+        count++;
+      }
+    }
+    return count;
+  }
+}
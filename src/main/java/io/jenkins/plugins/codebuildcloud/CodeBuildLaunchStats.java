@@ -0,0 +1,134 @@
+package io.jenkins.plugins.codebuildcloud;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * How long each step of launching an agent takes across a cloud's launches, as
+ * one histogram per step. See {@link CodeBuildLaunchTimeline}.
+ *
+ * Kept per cloud name, like {@link CodeBuildAgentRegistry}, so it survives
+ * configuration saves.
+ */
+public class CodeBuildLaunchStats {
+
+  private static final ConcurrentMap<String, CodeBuildLaunchStats> STATS = new ConcurrentHashMap<String, CodeBuildLaunchStats>();
+
+  // Upper bounds of the buckets, anything longer goes in the last one
+  static final long[] BUCKET_BOUNDS_MS = { 1000, 2000, 5000, 10000, 20000, 30000, 60000, 120000, 300000, 600000,
+      1200000 };
+
+  /** How long one step took, over all launches so far. */
+  public static final class Histogram {
+    private final String step;
+    private final long[] counts = new long[BUCKET_BOUNDS_MS.length + 1];
+    private long count;
+    private long totalMs;
+    private long maxMs;
+
+    Histogram(String step) {
+      this.step = step;
+    }
+
+    synchronized void add(long ms) {
+      int i = 0;
+      while (i < BUCKET_BOUNDS_MS.length && ms > BUCKET_BOUNDS_MS[i]) {
+        i++;
+      }
+      counts[i]++;
+      count++;
+      totalMs += ms;
+      maxMs = Math.max(maxMs, ms);
+    }
+
+    @NonNull
+    public String getStep() {
+      return step;
+    }
+
+    public synchronized long getCount() {
+      return count;
+    }
+
+    public synchronized long getMeanMs() {
+      return count == 0 ? 0 : totalMs / count;
+    }
+
+    public synchronized long getMaxMs() {
+      return maxMs;
+    }
+
+    /**
+     * @param p between 0 and 1.
+     * @return the upper bound of the bucket the percentile falls into, never more
+     *         than the longest time seen.
+     */
+    public synchronized long getPercentileMs(double p) {
+      long rank = (long) Math.ceil(p * count);
+      long seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen >= rank && seen > 0) {
+          return i < BUCKET_BOUNDS_MS.length ? Math.min(maxMs, BUCKET_BOUNDS_MS[i]) : maxMs;
+        }
+      }
+      return 0;
+    }
+
+    public String getMeanSeconds() {
+      return seconds(getMeanMs());
+    }
+
+    public String getP50Seconds() {
+      return seconds(getPercentileMs(0.5));
+    }
+
+    public String getP90Seconds() {
+      return seconds(getPercentileMs(0.9));
+    }
+
+    public String getMaxSeconds() {
+      return seconds(getMaxMs());
+    }
+
+    private static String seconds(long ms) {
+      return String.format("%.1f", ms / (double) TimeUnit.SECONDS.toMillis(1));
+    }
+  }
+
+  // In the order steps were first seen, which is the order they happen in
+  private final Map<String, Histogram> histograms = new LinkedHashMap<String, Histogram>();
+
+  // Tests build their own
+  CodeBuildLaunchStats() {
+  }
+
+  @NonNull
+  static CodeBuildLaunchStats forCloud(@NonNull String cloudName) {
+    return STATS.computeIfAbsent(cloudName, n -> new CodeBuildLaunchStats());
+  }
+
+  /** Adds the steps of this launch that finished since it was last recorded. */
+  public void record(@NonNull CodeBuildLaunchTimeline timeline) {
+    for (CodeBuildLaunchTimeline.Step s : timeline.takeFinishedSteps()) {
+      histogram(s.getName()).add(s.getDurationMs());
+    }
+  }
+
+  private synchronized Histogram histogram(String step) {
+    return histograms.computeIfAbsent(step, Histogram::new);
+  }
+
+  /** One histogram per step, by step name. */
+  @NonNull
+  public synchronized List<Histogram> getHistograms() {
+    return new ArrayList<Histogram>(histograms.values());
+  }
+}
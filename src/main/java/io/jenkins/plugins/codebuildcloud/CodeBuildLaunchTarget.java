@@ -0,0 +1,77 @@
+package io.jenkins.plugins.codebuildcloud;
+
+import java.util.Objects;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Where an agent's CodeBuild build runs: a project, reached with a set of
+ * credentials in a region. Resolved from a {@link CodeBuildCloud}'s
+ * configuration when the agent is launched.
+ */
+public final class CodeBuildLaunchTarget {
+
+  @NonNull
+  private final String projectName;
+  private final String credentialId;
+  private final String region;
+  private final int weight;
+  private final String dockerImage;
+
+  CodeBuildLaunchTarget(@NonNull String projectName, String credentialId, String region, int weight,
+      String dockerImage) {
+    this.projectName = projectName;
+    this.credentialId = credentialId;
+    this.region = region;
+    this.weight = Math.max(1, weight);
+    this.dockerImage = dockerImage;
+  }
+
+  @NonNull
+  public String getProjectName() {
+    return projectName;
+  }
+
+  public String getCredentialId() {
+    return credentialId;
+  }
+
+  public String getRegion() {
+    return region;
+  }
+
+  public int getWeight() {
+    return weight;
+  }
+
+  public String getDockerImage() {
+    return dockerImage;
+  }
+
+  /** The same project, building with another image. */
+  @NonNull
+  CodeBuildLaunchTarget withDockerImage(String dockerImage) {
+    return new CodeBuildLaunchTarget(projectName, credentialId, region, weight, dockerImage);
+  }
+
+  /** Identifies the project across accounts and regions. */
+  @NonNull
+  public String getKey() {
+    return String.format("%s/%s/%s", credentialId, region, projectName);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof CodeBuildLaunchTarget && getKey().equals(((CodeBuildLaunchTarget) o).getKey());
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(getKey());
+  }
+
+  @Override
+  public String toString() {
+    return getKey();
+  }
+}
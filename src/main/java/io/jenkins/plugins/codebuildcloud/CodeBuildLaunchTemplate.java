@@ -0,0 +1,201 @@
+package io.jenkins.plugins.codebuildcloud;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.lang.StringUtils;
+
+import com.amazonaws.services.codebuild.model.EnvironmentVariable;
+import com.amazonaws.services.codebuild.model.SourceType;
+import com.amazonaws.services.codebuild.model.StartBuildRequest;
+import com.cloudbees.plugins.credentials.Credentials;
+import com.cloudbees.plugins.credentials.CredentialsMatchers;
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.security.ACL;
+
+/**
+ * The part of a StartBuild request every agent of a {@link CodeBuildCloud}
+ * shares. Building it looks up credentials, so it is built once and kept until
+ * the configuration or the credentials change. See
+ * {@link CodeBuildCloud#getLaunchTemplate()}.
+ */
+public final class CodeBuildLaunchTemplate {
+
+  private final long credentialsGeneration;
+  private final List<EnvironmentVariable> environment;
+  private final String environmentType;
+  private final String imagePullCredentialsType;
+  private final String buildSpec;
+
+  CodeBuildLaunchTemplate(@NonNull CodeBuildCloud cloud, long credentialsGeneration) {
+    this.credentialsGeneration = credentialsGeneration;
+    this.environment = Collections.unmodifiableList(buildEnvVariableCollection(cloud));
+    this.environmentType = cloud.getEnvironmentType();
+    this.imagePullCredentialsType = cloud.getDockerImagePullCredentials();
+    this.buildSpec = cloud.getBuildSpec();
+  }
+
+  long getCredentialsGeneration() {
+    return credentialsGeneration;
+  }
+
+  /**
+   * A request for one agent. Only its secret and name are added to the
+   * template's environment.
+   *
+   * @param target      where to start the build, gives the project and image.
+   * @param computeType picked for this agent's job.
+   */
+  @NonNull
+  public StartBuildRequest newRequest(@NonNull CodeBuildLaunchTarget target, @NonNull String computeType,
+      @NonNull String secret, @NonNull String agentName) {
+    List<EnvironmentVariable> env = new ArrayList<EnvironmentVariable>(environment.size() + 2);
+    env.addAll(environment);
+    env.add(createEnvVariable("JENKINS_SECRET", secret));
+    env.add(createEnvVariable("JENKINS_AGENT_NAME", agentName));
+
+    return new StartBuildRequest()
+        .withProjectName(target.getProjectName())
+        .withSourceTypeOverride(SourceType.NO_SOURCE)
+        .withImageOverride(target.getDockerImage())
+        .withEnvironmentTypeOverride(environmentType)
+        .withPrivilegedModeOverride(true)
+        .withEnvironmentVariablesOverride(env)
+        .withComputeTypeOverride(computeType)
+        .withImagePullCredentialsTypeOverride(imagePullCredentialsType)
+        .withBuildspecOverride(buildSpec);
+  }
+
+  private static String lookupProxyCredentials(@NonNull CodeBuildCloud cloud) {
+    String proxyCredentialId = cloud.getProxyCredentialsId();
+    String proxyCredentials = null;
+    if (!StringUtils.isBlank(proxyCredentialId)) {
+
+      @SuppressWarnings("unchecked")
+      List<StandardUsernamePasswordCredentials> creds = (List<StandardUsernamePasswordCredentials>) CredentialsProvider
+          .lookupCredentials(StandardUsernamePasswordCredentials.class,
+              CodeBuildCloud.getJenkins(),
+              ACL.SYSTEM,
+              Collections.EMPTY_LIST);
+
+      Credentials c = CredentialsMatchers.firstOrNull(creds, CredentialsMatchers.withId(proxyCredentialId));
+
+      if (c != null) {
+        StandardUsernamePasswordCredentials mycreds = (StandardUsernamePasswordCredentials) c;
+        proxyCredentials = mycreds.getUsername() + ":" + mycreds.getPassword().getPlainText();
+      }
+    }
+
+    return proxyCredentials;
+  }
+
+  private static List<EnvironmentVariable> buildEnvVariableCollection(@NonNull CodeBuildCloud cloud) {
+    List<EnvironmentVariable> mylist = new ArrayList<EnvironmentVariable>();
+
+    String proxyCredentials = lookupProxyCredentials(cloud);
+
+    // Next section based on below script and my own design for buildspec files
+    // https://github.com/jenkinsci/docker-inbound-agent/blob/62ee56932623a0a66179b0130da806c39d5c323f/jenkins-agent#L27-L39
+
+    // 3 primary use cases
+    // Direct
+    // Websocket
+    // Everything else
+
+    // Direct use case
+    if (StringUtils.isNotEmpty(cloud.getDirect())) {
+      // Cannot include URL or Tunnel forbids = {"-url", "-tunnel"}
+
+      mylist.add(createEnvVariable("JENKINS_DIRECT_CONNECTION", cloud.getDirect()));
+      mylist.add(createEnvVariable("JENKINS_INSTANCE_IDENTITY", cloud.getControllerIdentity().getPlainText()));
+
+      if (StringUtils.isNotEmpty(cloud.getProtocols())) {
+        mylist.add(createEnvVariable("JENKINS_PROTOCOLS", cloud.getProtocols()));
+      }
+
+      if (StringUtils.isNotEmpty(proxyCredentials)) {
+        mylist.add(createEnvVariable("JENKINS_CODEBUILD_PROXY_CREDENTIALS",
+            "-proxyCredentials " + proxyCredentials));
+      }
+
+      if (cloud.getNoKeepAlive()) {
+        mylist.add(createEnvVariable("JENKINS_CODEBUILD_NOKEEPALIVE", "-noKeepAlive"));
+      }
+
+      if (cloud.getDisableHttpsCertValidation()) {
+        mylist.add(createEnvVariable("JENKINS_CODEBUILD_DISABLE_SSL_VALIDATION", "-disableHttpsCertValidation"));
+      }
+    } else if (cloud.getWebSocket()) { // websocket use case
+      mylist.add(createEnvVariable("JENKINS_WEB_SOCKET", "true"));
+      mylist.add(createEnvVariable("JENKINS_URL", cloud.getJenkinsUrl()));
+    } else {
+      if (StringUtils.isNotEmpty(cloud.getTunnel())) {
+        mylist.add(createEnvVariable("JENKINS_TUNNEL", cloud.getTunnel()));
+      }
+
+      mylist.add(createEnvVariable("JENKINS_URL", cloud.getJenkinsUrl()));
+
+      if (StringUtils.isNotEmpty(proxyCredentials)) {
+        mylist.add(createEnvVariable("JENKINS_CODEBUILD_PROXY_CREDENTIALS",
+            "-proxyCredentials " + proxyCredentials));
+      }
+
+      if (cloud.getNoKeepAlive()) {
+        mylist.add(createEnvVariable("JENKINS_CODEBUILD_NOKEEPALIVE", "-noKeepAlive"));
+      }
+
+      if (cloud.getDisableHttpsCertValidation()) {
+        mylist.add(createEnvVariable("JENKINS_CODEBUILD_DISABLE_SSL_VALIDATION", "-disableHttpsCertValidation"));
+      }
+    }
+
+    // no forbids or dependencies - all agent types get them
+    if (cloud.getNoReconnect()) {
+      mylist.add(createEnvVariable("JENKINS_CODEBUILD_NORECONNECT", "-noreconnect"));
+    }
+
+    // Extra helper environment variables for downloading the JAR file instead of
+    // over the internet. Served by CodeBuildAgentBundle below a content hash, so
+    // caches in between can keep it.
+    java.net.URL myurl;
+    try {
+      myurl = new java.net.URL(cloud.getJenkinsUrl());
+    } catch (MalformedURLException e) {
+      mylist.add(createEnvVariable("JENKINS_CODEBUILD_AGENT_URL", "ERROR"));
+      return mylist;
+    }
+
+    String base = myurl.toExternalForm();
+    if (!base.endsWith("/")) {
+      base += "/";
+    }
+    try {
+      CodeBuildAgentBundle bundle = CodeBuildAgentBundle.get();
+      mylist.add(createEnvVariable("JENKINS_CODEBUILD_AGENT_URL", base + bundle.getPath(CodeBuildAgentBundle.AGENT_JAR)));
+      mylist.add(createEnvVariable("JENKINS_CODEBUILD_AGENT_SHA256", bundle.getSha256(CodeBuildAgentBundle.AGENT_JAR)));
+      mylist.add(createEnvVariable("JENKINS_CODEBUILD_LAUNCHER_URL", base + bundle.getPath(CodeBuildAgentBundle.LAUNCHER)));
+    } catch (IOException e) {
+      // Cannot read the jar - agents still get the one Jenkins itself serves
+      mylist.add(createEnvVariable("JENKINS_CODEBUILD_AGENT_URL",
+          myurl.getProtocol() + "://" + myurl.getAuthority() + "/jnlpJars/agent.jar"));
+    }
+
+    return mylist;
+  }
+
+  private static EnvironmentVariable createEnvVariable(String key, String value) {
+    EnvironmentVariable var1 = new EnvironmentVariable();
+    var1.setName(key);
+    var1.setType("PLAINTEXT");
+    var1.setValue(value);
+
+    return var1;
+
+  }
+}
@@ -0,0 +1,126 @@
+package io.jenkins.plugins.codebuildcloud;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.amazonaws.services.codebuild.model.BuildPhase;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * When each step of launching one agent happened: the StartBuild call, every
+ * phase of its CodeBuild build, the agent coming online and it getting its
+ * first task. Tells CodeBuild queueing, provisioning and image pull, the
+ * buildspec install and the JNLP handshake apart.
+ *
+ * Each step lasts until the next one starts. CodeBuild's clock may be a little
+ * off from ours, so steps are ordered by time and never last less than 0.
+ */
+public class CodeBuildLaunchTimeline {
+
+  public static final String START_BUILD = "StartBuild";
+  public static final String RESPILLED = "Restarted elsewhere";
+  public static final String RELAUNCHED = "Relaunched after failure";
+  public static final String AGENT_ONLINE = "Agent online";
+  public static final String FIRST_TASK = "First task";
+
+  // Phase names are prefixed, so they cannot clash with our own steps
+  private static final String PHASE_PREFIX = "CodeBuild ";
+
+  /** One step of the launch. */
+  public static final class Step {
+    private final String name;
+    private final long offsetMs;
+    private final long durationMs;
+
+    Step(String name, long offsetMs, long durationMs) {
+      this.name = name;
+      this.offsetMs = offsetMs;
+      this.durationMs = durationMs;
+    }
+
+    @NonNull
+    public String getName() {
+      return name;
+    }
+
+    /** Since the launch started. */
+    public long getOffsetMs() {
+      return offsetMs;
+    }
+
+    /** -1 while the step is still going on. */
+    public long getDurationMs() {
+      return durationMs;
+    }
+
+    public String getOffsetSeconds() {
+      return String.format("%.1f", offsetMs / 1000.0);
+    }
+
+    public String getDurationSeconds() {
+      return durationMs < 0 ? "" : String.format("%.1f", durationMs / 1000.0);
+    }
+  }
+
+  private final Map<String, Long> marks = new LinkedHashMap<String, Long>();
+  private final Set<String> taken = new HashSet<String>();
+
+  /**
+   * Records when a step started. Only the first time counts.
+   *
+   * @return whether this was the first time.
+   */
+  public synchronized boolean mark(@NonNull String step, long epochMs) {
+    return marks.putIfAbsent(step, epochMs) == null;
+  }
+
+  /** Records the phases CodeBuild reports for the agent's build. */
+  public void markPhases(List<BuildPhase> phases) {
+    if (phases == null) {
+      return;
+    }
+    for (BuildPhase p : phases) {
+      Date start = p.getStartTime();
+      if (start != null && p.getPhaseType() != null) {
+        mark(PHASE_PREFIX + p.getPhaseType(), start.getTime());
+      }
+    }
+  }
+
+  /** The steps so far, in the order they happened. */
+  @NonNull
+  public synchronized List<Step> getSteps() {
+    List<Map.Entry<String, Long>> ordered = new ArrayList<Map.Entry<String, Long>>(marks.entrySet());
+    // Stable, so steps recorded at the same time keep the order they came in
+    ordered.sort(Map.Entry.comparingByValue());
+
+    List<Step> steps = new ArrayList<Step>();
+    for (int i = 0; i < ordered.size(); i++) {
+      long start = ordered.get(i).getValue();
+      long duration = i + 1 < ordered.size() ? Math.max(0, ordered.get(i + 1).getValue() - start) : -1;
+      steps.add(new Step(ordered.get(i).getKey(), Math.max(0, start - ordered.get(0).getValue()), duration));
+    }
+    return steps;
+  }
+
+  /**
+   * The steps that finished since the last call, for adding to
+   * {@link CodeBuildLaunchStats} exactly once.
+   */
+  @NonNull
+  synchronized List<Step> takeFinishedSteps() {
+    List<Step> finished = new ArrayList<Step>();
+    for (Step s : getSteps()) {
+      if (s.getDurationMs() >= 0 && taken.add(s.getName())) {
+        finished.add(s);
+      }
+    }
+    return finished;
+  }
+}
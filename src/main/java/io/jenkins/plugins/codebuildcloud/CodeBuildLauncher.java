@@ -2,40 +2,42 @@ package io.jenkins.plugins.codebuildcloud;
 
 import java.io.IOException;
 import java.io.InvalidObjectException;
-import java.net.MalformedURLException;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
 
-import com.amazonaws.services.codebuild.model.EnvironmentVariable;
-import com.amazonaws.services.codebuild.model.SourceType;
 import com.amazonaws.services.codebuild.model.StartBuildRequest;
-import com.amazonaws.services.codebuild.model.StartBuildResult;
-import com.cloudbees.plugins.credentials.Credentials;
-import com.cloudbees.plugins.credentials.CredentialsMatchers;
-import com.cloudbees.plugins.credentials.CredentialsProvider;
-import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
-import hudson.model.Node;
 import hudson.model.TaskListener;
-import hudson.security.ACL;
 import hudson.slaves.JNLPLauncher;
 import hudson.slaves.SlaveComputer;
 import hudson.util.StreamTaskListener;
-import io.jenkins.cli.shaded.org.apache.commons.lang.StringUtils;
 import io.jenkins.plugins.codebuildcloud.CodeBuildClientWrapper.CodeBuildStatus;
+import jenkins.util.Timer;
 
 public class CodeBuildLauncher extends JNLPLauncher {
-  private static final int sleepMs = 500;
   private static final Logger LOGGER = Logger.getLogger(CodeBuildLauncher.class.getName());
-  private static final int CHECK_WITH_CODEBUILD_STATUS = Math.multiplyExact(30, 1000);
+  private static final List<CodeBuildStatus> FINISHED_STATUSES = Arrays.asList(CodeBuildStatus.FAILED,
+      CodeBuildStatus.FAULT,
+      CodeBuildStatus.STOPPED,
+      CodeBuildStatus.SUCCEEDED,
+      CodeBuildStatus.TIMED_OUT);
+  // Build phases before CodeBuild has picked up the build
+  private static final List<String> QUEUED_PHASES = Arrays.asList("SUBMITTED", "QUEUED");
 
   public final CodeBuildCloud cloud;
-  private boolean launched = false;
+  private volatile boolean launched = false;
+  private transient volatile CompletableFuture<Void> connection;
+  private transient volatile long launchStarted;
 
   public CodeBuildLauncher(CodeBuildCloud cloud) {
     super(true);
@@ -68,186 +70,398 @@ public class CodeBuildLauncher extends JNLPLauncher {
 
     LOGGER.info(String.format("Launching %s with %s", computer, listener));
 
-    // Extra ENV Variables to add to the
-    List<EnvironmentVariable> myenvcollection = buildEnvVariableCollection(computer, node);
+    CodeBuildLaunchTarget target;
+    String computeType;
+    try {
+      // Spread builds over the configured projects
+      target = cloud.assignLaunchTarget(computer.getName());
 
-    StartBuildRequest req = new StartBuildRequest()
-        .withProjectName(cloud.getCodeBuildProjectName())
-        .withSourceTypeOverride(SourceType.NO_SOURCE)
-        .withImageOverride(cloud.getDockerImage())
-        .withEnvironmentTypeOverride(cloud.getEnvironmentType())
-        .withPrivilegedModeOverride(true)
-        .withEnvironmentVariablesOverride(myenvcollection)
-        .withComputeTypeOverride(cloud.getComputeType())
-        .withImagePullCredentialsTypeOverride(cloud.getDockerImagePullCredentials())
-        .withBuildspecOverride(cloud.getBuildSpec());
+      computeType = node.getComputeType() == null ? cloud.chooseComputeType(node.getJobKey())
+          : node.getComputeType();
+    } catch (Exception e) {
+      launchFailed(codebuildComputer, node, e);
+      return;
+    }
+    LOGGER.info(String.format("Agent '%s' for job '%s' gets compute type %s", computer.getName(), node.getJobKey(),
+        computeType));
 
-    String buildId = null;
+    launchStarted = System.nanoTime();
+    CodeBuildLaunchTimeline timeline = codebuildComputer.newLaunchTimeline();
+    timeline.mark(CodeBuildLaunchTimeline.START_BUILD, System.currentTimeMillis());
 
-    try {
-      StartBuildResult res = cloud.getClient().startBuild(req);
-      buildId = res.getBuild().getId();
-      codebuildComputer.setBuildId(buildId);
+    // Set up before starting the build so an early connection is not missed
+    CompletableFuture<Void> connected = new CompletableFuture<Void>();
+    connection = connected;
 
-      waitForAgentConnection(computer, buildId, node);
+    startBuild(codebuildComputer, node, target, computeType, connected,
+        new LaunchState(launchStarted + TimeUnit.SECONDS.toNanos(cloud.getAgentConnectTimeout())));
+  }
+
+  /** What one launch of an agent went through so far, across its builds. */
+  private static final class LaunchState {
+    // agentConnectTimeout is for the whole launch, respills and relaunches
+    // included, in System.nanoTime()
+    final long deadline;
+    // Targets and compute types its builds were started with, see respillKey
+    final Set<String> tried = ConcurrentHashMap.newKeySet();
+    // Only one build at a time, but callbacks run on different threads
+    volatile int relaunches;
+    volatile int computeTypeIndex = -1;
+    volatile int imageIndex = -1;
+
+    LaunchState(long deadline) {
+      this.deadline = deadline;
+    }
 
-      launched = true;
+    long remainingMs() {
+      return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+    }
+  }
 
+  /**
+   * Starts the agent's CodeBuild build on a target. Asynchronous so no Jenkins
+   * thread waits on the StartBuild call. Also runs from timers, so whatever
+   * goes wrong ends the launch here rather than escaping.
+   *
+   * @param state what this launch went through so far.
+   */
+  private void startBuild(@NonNull CodeBuildComputer computer, @NonNull CodeBuildAgent node,
+      @NonNull CodeBuildLaunchTarget target, @NonNull String computeType, @NonNull CompletableFuture<Void> connected,
+      @NonNull LaunchState state) {
+    try {
+      startBuildAsync(computer, node, target, computeType, connected, state);
     } catch (Exception e) {
+      // Building the client or the request, e.g. looking up credentials
+      launchFailed(computer, node, e);
+    }
+  }
 
-      LOGGER.severe(String.format("Exception while starting build: %s.  Exception %s", e.getMessage(), e));
-      listener.fatalError("Exception while starting build: %s", e.getMessage());
+  private void startBuildAsync(@NonNull CodeBuildComputer computer, @NonNull CodeBuildAgent node,
+      @NonNull CodeBuildLaunchTarget target, @NonNull String computeType, @NonNull CompletableFuture<Void> connected,
+      @NonNull LaunchState state) {
+    if (state.remainingMs() <= 0) {
+      // Out of time before a respill or relaunch got going
+      String message = "Timed out while waiting for agent " + node + " to start";
+      cloud.getLaunchFailures().record(CodeBuildLaunchFailures.Reason.CONNECT_TIMEOUT, computer.getName(), null,
+          message, "Gave up");
+      launchFailed(computer, node, new TimeoutException(message));
+      return;
+    }
+    state.tried.add(respillKey(target, computeType));
+    computer.setLaunchTarget(target);
+    CodeBuildClientWrapper client = cloud.getClient(target);
+
+    // Retried StartBuilds must not start a second build
+    StartBuildRequest req = cloud.getLaunchTemplate()
+        .newRequest(target, computeType, computer.getJnlpMac(), node.getDisplayName())
+        .withIdempotencyToken(UUID.randomUUID().toString());
+
+    CodeBuildRegionHealth health = cloud.getRegionHealth();
+    client.startBuildAsync(req).whenComplete((res, e) -> {
+      if (e != null) {
+        Throwable cause = CodeBuildClientWrapper.unwrap(e);
+        if (CodeBuildAdaptiveLimit.isPushback(cause)) {
+          cloud.getAdaptiveLimit().onPushback();
+        }
+        health.recordError(target.getRegion(), cloud.getSpilloverQueueSeconds());
+        relaunchOrFail(computer, node, target, computeType, null, CodeBuildLaunchFailures.classify(cause), cause,
+            connected, state);
+        return;
+      }
+      cloud.getAdaptiveLimit().onSuccess(cloud.getEffectiveMaxAgents());
+      health.recordSuccess(target.getRegion(), cloud.getSpilloverQueueSeconds());
 
-      // Node will stop the AWS CodeBuild build. See _terminate
       try {
-        node.terminate();
-      } catch (IOException | InterruptedException e1) {
-        LOGGER.severe(String.format("Failed to terminate agent: %s.  Exception: %s", node.getDisplayName(), e));
+        String buildId = res.getBuild().getId();
+        computer.setBuildId(buildId);
+        computer.getLaunchTimeline().markPhases(res.getBuild().getPhases());
+
+        awaitAgentConnection(computer, buildId, node, client, target, computeType, connected, state);
+
+      } catch (Exception e1) {
+        launchFailed(computer, node, e1);
       }
-    }
+    });
   }
 
-  private void waitForAgentConnection(@NonNull SlaveComputer computer, @NonNull String buildId, @NonNull Node node)
-      throws TimeoutException, InvalidObjectException, InterruptedException {
+  private static String respillKey(@NonNull CodeBuildLaunchTarget target, @NonNull String computeType) {
+    return target.getKey() + "/" + computeType;
+  }
+
+  /**
+   * Returns right away. The launch completes when the agent comes online (see
+   * {@link CodeBuildComputerListener}), when the poller reports the build as
+   * finished, or when agentConnectTimeout expires, whichever happens first. No
+   * thread is parked while the CodeBuild build boots.
+   *
+   * A build still queued after respillQueueSeconds is stopped and started again
+   * on the first alternative not tried yet, see {@link #respill}. A build that
+   * ends before its agent connects may be relaunched, see
+   * {@link #relaunchOrFail}.
+   */
+  private void awaitAgentConnection(@NonNull CodeBuildComputer computer, @NonNull String buildId,
+      @NonNull CodeBuildAgent node, @NonNull CodeBuildClientWrapper client, @NonNull CodeBuildLaunchTarget target,
+      @NonNull String computeType, @NonNull CompletableFuture<Void> connected, @NonNull LaunchState state) {
     LOGGER.info(String.format("Waiting for agent '%s' to connect with build ID: %s...", computer, buildId));
 
-    int checkbuildcounter = 0;
-    for (int i = 0; i < cloud.getAgentConnectTimeout() * (1000 / sleepMs); i++) {
-      if (computer.isOnline() && computer.isAcceptingTasks()) {
-        LOGGER.info(String.format(" Agent '%s' connected to build ID: %s.", computer, buildId));
+    // How long the build queues feeds into the health of its region. Recorded
+    // once, when the build leaves the queue or at the latest when it connects.
+    CodeBuildRegionHealth health = cloud.getRegionHealth();
+    long started = System.nanoTime();
+    AtomicBoolean dequeued = new AtomicBoolean();
+    Runnable recordQueueTime = () -> {
+      if (dequeued.compareAndSet(false, true)) {
+        health.recordQueueTime(target.getRegion(), (System.nanoTime() - started) / 1e9,
+            cloud.getSpilloverQueueSeconds());
+      }
+    };
+
+    // Set when either the launch ends or this build is given up on for another
+    // one, whichever comes first. In the latter case this attempt no longer has
+    // a say in how the launch ends.
+    AtomicBoolean settled = new AtomicBoolean();
+
+    // Status changes come from the poller shared by all launching agents. This
+    // allows us to fail fast on this side of the connection.
+    CodeBuildBuildStatusPoller poller = client.getStatusPoller();
+    CodeBuildLaunchTimeline timeline = computer.getLaunchTimeline();
+    ScheduledFuture<?> timeout = Timer.get().schedule(
+        () -> connected.completeExceptionally(new TimeoutException(
+            "Timed out while waiting for agent " + node + " to start for build ID: " + buildId)),
+        state.remainingMs(), TimeUnit.MILLISECONDS);
+
+    // The poller only reports changes, and a build that stays queued has none.
+    // So whether it is still queued is checked once, when respillQueueSeconds
+    // are up. With nowhere else to go it waits it out.
+    ScheduledFuture<?> respillCheck = cloud.getRespillQueueSeconds() <= 0 ? null : Timer.get().schedule(() -> {
+      if (dequeued.get()) {
         return;
       }
-      Thread.sleep(sleepMs);
-      checkbuildcounter += sleepMs;
-
-      // Has it been 30 second or longer? Run request to ask Codebuild status of the
-      // build. This allows us to fail fast on this side of the connection.
-      if (checkbuildcounter > 30000) {
-        checkbuildcounter = 0; // Reset
-
-        // Should be inprogress only at this point.
-        cloud.getClient().checkBuildStatus(buildId, Arrays.asList(CodeBuildStatus.FAILED,
-            CodeBuildStatus.FAULT,
-            CodeBuildStatus.STOPPED,
-            CodeBuildStatus.SUCCEEDED,
-            CodeBuildStatus.TIMED_OUT));
+      Attempt next = nextAttempt(target, computeType, node.getJobKey(), state.tried);
+      if (next == null || !settled.compareAndSet(false, true)) {
+        return;
+      }
+      // Queued this long counts against the region
+      recordQueueTime.run();
+      poller.unwatch(buildId);
+      timeout.cancel(false);
+      client.stopBuildAsync(buildId).whenComplete((v, e) -> {
+        if (e != null) {
+          LOGGER.warning(String.format("Failed to stop queued build ID: %s.  Exception %s", buildId,
+              CodeBuildClientWrapper.unwrap(e)));
+        }
+      });
+      respill(computer, node, buildId, next, connected, state);
+    }, cloud.getRespillQueueSeconds(), TimeUnit.SECONDS);
+
+    poller.watch(buildId, b -> {
+      timeline.markPhases(b.getPhases());
+
+      // Should be inprogress only at this point.
+      String phase = b.getCurrentPhase();
+      if (phase != null && !QUEUED_PHASES.contains(phase)) {
+        recordQueueTime.run();
       }
-    }
-    throw new TimeoutException("Timed out while waiting for agent " + node + " to start for build ID: " + buildId);
-  }
-
-  private String lookupProxyCredentials() {
-    String proxyCredentialId = cloud.getProxyCredentialsId();
-    String proxyCredentials = null;
-    if (!StringUtils.isBlank(proxyCredentialId)) {
 
-      @SuppressWarnings("unchecked")
-      List<StandardUsernamePasswordCredentials> creds = (List<StandardUsernamePasswordCredentials>) CredentialsProvider
-          .lookupCredentials(StandardUsernamePasswordCredentials.class,
-              cloud.getJenkins(),
-              ACL.SYSTEM,
-              Collections.EMPTY_LIST);
+      String status = b.getBuildStatus();
+      if (status != null && FINISHED_STATUSES.contains(CodeBuildStatus.valueOf(status))
+          && settled.compareAndSet(false, true)) {
+        poller.unwatch(buildId);
+        timeout.cancel(false);
+        cancel(respillCheck);
+        health.recordError(target.getRegion(), cloud.getSpilloverQueueSeconds());
+        relaunchOrFail(computer, node, target, computeType, buildId, CodeBuildLaunchFailures.classify(b),
+            new InvalidObjectException("Invalid CodeBuild status detected: " + CodeBuildLaunchFailures.describe(b)),
+            connected, state);
+      }
+    });
 
-      Credentials c = CredentialsMatchers.firstOrNull(creds, CredentialsMatchers.withId(proxyCredentialId));
+    connected.whenComplete((v, e) -> {
+      if (!settled.compareAndSet(false, true)) {
+        return;
+      }
+      poller.unwatch(buildId);
+      timeout.cancel(false);
+      cancel(respillCheck);
 
-      if (c != null) {
-        StandardUsernamePasswordCredentials mycreds = (StandardUsernamePasswordCredentials) c;
-        proxyCredentials = mycreds.getUsername() + ":" + mycreds.getPassword().getPlainText();
-        // LOGGER.info("Proxy Credentials:" + proxyCredentials);
+      if (e == null) {
+        recordQueueTime.run();
+        LOGGER.info(String.format(" Agent '%s' connected to build ID: %s.", computer, buildId));
+        cloud.getAgentRegistry().recordColdStart(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - launchStarted));
+        timeline.mark(CodeBuildLaunchTimeline.AGENT_ONLINE, System.currentTimeMillis());
+        cloud.getLaunchStats().record(timeline);
+        LOGGER.info(String.format("Agent '%s' launch steps: %s", computer.getName(), describe(timeline)));
+        launched = true;
+        computer.transition(CodeBuildAgentRegistry.State.IDLE);
+      } else {
+        health.recordError(target.getRegion(), cloud.getSpilloverQueueSeconds());
+        // Builds that end are handled by the poller, so this is the timeout
+        cloud.getLaunchFailures().record(CodeBuildLaunchFailures.Reason.CONNECT_TIMEOUT, computer.getName(), buildId,
+            e.getMessage(), "Gave up");
+        launchFailed(computer, node, e);
       }
-    }
+    });
 
-    return proxyCredentials;
+    // In case it came online before we were watching
+    if (computer.isOnline()) {
+      connected.complete(null);
+    }
   }
 
-  private List<EnvironmentVariable> buildEnvVariableCollection(@NonNull SlaveComputer computer, @NonNull Node node) {
-    List<EnvironmentVariable> mylist = new ArrayList<EnvironmentVariable>();
-
-    String proxyCredentials = lookupProxyCredentials();
-
-    // Next section based on below script and my own design for buildspec files
-    // https://github.com/jenkinsci/docker-inbound-agent/blob/62ee56932623a0a66179b0130da806c39d5c323f/jenkins-agent#L27-L39
+  private static void cancel(ScheduledFuture<?> f) {
+    if (f != null) {
+      f.cancel(false);
+    }
+  }
 
-    // 3 primary use cases
-    // Direct
-    // Websocket
-    // Everything else
+  /** A target and compute type to restart a queued build with. */
+  private static final class Attempt {
+    final CodeBuildLaunchTarget target;
+    final String computeType;
 
-    // Direct use case
-    if (StringUtils.isNotEmpty(cloud.getDirect())) {
-      // Cannot include URL or Tunnel forbids = {"-url", "-tunnel"}
+    Attempt(CodeBuildLaunchTarget target, String computeType) {
+      this.target = target;
+      this.computeType = computeType;
+    }
 
-      mylist.add(createEnvVariable("JENKINS_DIRECT_CONNECTION", cloud.getDirect()));
-      mylist.add(createEnvVariable("JENKINS_INSTANCE_IDENTITY", cloud.getControllerIdentity().getPlainText()));
+    @Override
+    public String toString() {
+      return String.format("%s with %s and image %s", target, computeType, target.getDockerImage());
+    }
+  }
 
-      if (StringUtils.isNotEmpty(cloud.getProtocols())) {
-        mylist.add(createEnvVariable("JENKINS_PROTOCOLS", cloud.getProtocols()));
+  /**
+   * The first alternative not tried yet for a build stuck in the CodeBuild
+   * queue: the same compute type on another target, then another compute type
+   * on the same target. Null if there is none.
+   */
+  private Attempt nextAttempt(@NonNull CodeBuildLaunchTarget target, @NonNull String computeType, String jobKey,
+      @NonNull Set<String> tried) {
+    for (CodeBuildLaunchTarget t : cloud.getRespillTargets(target)) {
+      if (!tried.contains(respillKey(t, computeType)) && cloud.getClient(t).isAvailable()) {
+        return new Attempt(t, computeType);
       }
-
-      if (StringUtils.isNotEmpty(proxyCredentials)) {
-        mylist.add(createEnvVariable("JENKINS_CODEBUILD_PROXY_CREDENTIALS",
-            "-proxyCredentials " + proxyCredentials));
+    }
+    for (String ct : cloud.getRespillComputeTypes(computeType, jobKey)) {
+      if (!tried.contains(respillKey(target, ct))) {
+        return new Attempt(target, ct);
       }
+    }
+    return null;
+  }
 
-      if (cloud.getNoKeepAlive()) {
-        mylist.add(createEnvVariable("JENKINS_CODEBUILD_NOKEEPALIVE", "-noKeepAlive"));
-      }
+  private void respill(@NonNull CodeBuildComputer computer, @NonNull CodeBuildAgent node, @NonNull String buildId,
+      @NonNull Attempt next, @NonNull CompletableFuture<Void> connected, @NonNull LaunchState state) {
+    LOGGER.info(String.format("Build ID: %s of agent '%s' stayed queued for over %ss, restarting it on %s with %s",
+        buildId, computer.getName(), cloud.getRespillQueueSeconds(), next.target, next.computeType));
+    computer.getLaunchTimeline().mark(CodeBuildLaunchTimeline.RESPILLED, System.currentTimeMillis());
+    cloud.getAgentRegistry().assignTarget(computer.getName(), next.target);
+    node.setComputeType(next.computeType);
+    startBuild(computer, node, next.target, next.computeType, connected, state);
+  }
 
-      if (cloud.getDisableHttpsCertValidation()) {
-        mylist.add(createEnvVariable("JENKINS_CODEBUILD_DISABLE_SSL_VALIDATION", "-disableHttpsCertValidation"));
-      }
-    } else if (cloud.getWebSocket()) { // websocket use case
-      mylist.add(createEnvVariable("JENKINS_WEB_SOCKET", "true"));
-      mylist.add(createEnvVariable("JENKINS_URL", cloud.getJenkinsUrl()));
-    } else {
-      if (StringUtils.isNotEmpty(cloud.getTunnel())) {
-        mylist.add(createEnvVariable("JENKINS_TUNNEL", cloud.getTunnel()));
-      }
+  /**
+   * Starts the agent's build again after it failed, within the same launch, so
+   * its job does not wait for the next provisioning round. What changes
+   * depends on why it failed, see {@link CodeBuildLaunchFailures.Fallback}.
+   * Gives up once relaunchAttempts are used up, and records why either way.
+   *
+   * @param buildId null if StartBuild failed.
+   */
+  private void relaunchOrFail(@NonNull CodeBuildComputer computer, @NonNull CodeBuildAgent node,
+      @NonNull CodeBuildLaunchTarget target, @NonNull String computeType, String buildId,
+      @NonNull CodeBuildLaunchFailures.Reason reason, @NonNull Throwable cause,
+      @NonNull CompletableFuture<Void> connected, @NonNull LaunchState state) {
+    Attempt next = nextRelaunch(target, computeType, reason, state);
+    CodeBuildLaunchFailures failures = cloud.getLaunchFailures();
+    if (next == null) {
+      failures.record(reason, computer.getName(), buildId, cause.getMessage(), "Gave up");
+      launchFailed(computer, node, cause);
+      return;
+    }
 
-      mylist.add(createEnvVariable("JENKINS_URL", cloud.getJenkinsUrl()));
+    int attempt = ++state.relaunches;
+    failures.record(reason, computer.getName(), buildId, cause.getMessage(), "Relaunched on " + next);
+    LOGGER.info(String.format("Launch of agent '%s' failed (%s: %s), relaunching on %s, attempt %d of %d",
+        computer.getName(), reason.getDisplayName(), cause.getMessage(), next, attempt, cloud.getRelaunchAttempts()));
+    computer.getListener().getLogger().println(String.format("%s: %s. Relaunching on %s", reason.getDisplayName(),
+        cause.getMessage(), next));
+    computer.getLaunchTimeline().mark(CodeBuildLaunchTimeline.RELAUNCHED, System.currentTimeMillis());
+    cloud.getAgentRegistry().assignTarget(computer.getName(), next.target);
+    node.setComputeType(next.computeType);
+
+    // Jittered like API retries, so agents that failed together do not all
+    // come back at once
+    Timer.get().schedule(() -> startBuild(computer, node, next.target, next.computeType, connected, state),
+        CodeBuildApiGuard.backoff(CodeBuildApiGuard.ErrorKind.TRANSIENT, attempt), TimeUnit.MILLISECONDS);
+  }
 
-      if (StringUtils.isNotEmpty(proxyCredentials)) {
-        mylist.add(createEnvVariable("JENKINS_CODEBUILD_PROXY_CREDENTIALS",
-            "-proxyCredentials " + proxyCredentials));
-      }
+  /**
+   * What to relaunch a failed agent with, or null to give up: the same target
+   * and compute type, or the next fallback compute type or image, depending on
+   * the reason. Once a chain is used up its last entry is retried, except for
+   * failed builds.
+   */
+  private Attempt nextRelaunch(@NonNull CodeBuildLaunchTarget target, @NonNull String computeType,
+      @NonNull CodeBuildLaunchFailures.Reason reason, @NonNull LaunchState state) {
+    if (reason.getFallback() == CodeBuildLaunchFailures.Fallback.NONE
+        || state.relaunches >= cloud.getRelaunchAttempts() || !cloud.getClient(target).isAvailable()) {
+      return null;
+    }
 
-      if (cloud.getNoKeepAlive()) {
-        mylist.add(createEnvVariable("JENKINS_CODEBUILD_NOKEEPALIVE", "-noKeepAlive"));
+    if (reason.getFallback() == CodeBuildLaunchFailures.Fallback.COMPUTE_TYPE) {
+      List<String> chain = cloud.getRelaunchComputeTypeChain();
+      if (state.computeTypeIndex + 1 < chain.size()) {
+        state.computeTypeIndex++;
+        return new Attempt(target, chain.get(state.computeTypeIndex));
       }
-
-      if (cloud.getDisableHttpsCertValidation()) {
-        mylist.add(createEnvVariable("JENKINS_CODEBUILD_DISABLE_SSL_VALIDATION", "-disableHttpsCertValidation"));
+    } else if (reason.getFallback() == CodeBuildLaunchFailures.Fallback.IMAGE) {
+      List<String> chain = cloud.getRelaunchDockerImageChain();
+      if (state.imageIndex + 1 < chain.size()) {
+        state.imageIndex++;
+        return new Attempt(target.withDockerImage(chain.get(state.imageIndex)), computeType);
       }
     }
 
-    // no forbids or dependencies - all agent types get them
-    if (cloud.getNoReconnect()) {
-      mylist.add(createEnvVariable("JENKINS_CODEBUILD_NORECONNECT", "-noreconnect"));
+    // A broken buildspec or agent download fails the same way again
+    if (reason == CodeBuildLaunchFailures.Reason.BUILD_FAILED) {
+      return null;
     }
-    mylist.add(createEnvVariable("JENKINS_SECRET", computer.getJnlpMac()));
-    mylist.add(createEnvVariable("JENKINS_AGENT_NAME", node.getDisplayName()));
-
-    // Extra helper environment variables for downloading the JAR file instead of
-    // over the internet
-    try {
-      java.net.URL myurl = new java.net.URL(cloud.getJenkinsUrl());
+    return new Attempt(target, computeType);
+  }
 
-      mylist.add(createEnvVariable("JENKINS_CODEBUILD_AGENT_URL",
-          myurl.getProtocol() + "://" + myurl.getAuthority() + "/jnlpJars/agent.jar"));
-    } catch (MalformedURLException e) {
-      mylist.add(createEnvVariable("JENKINS_CODEBUILD_AGENT_URL", "ERROR"));
+  private static String describe(@NonNull CodeBuildLaunchTimeline timeline) {
+    StringBuilder sb = new StringBuilder();
+    for (CodeBuildLaunchTimeline.Step s : timeline.getSteps()) {
+      if (s.getDurationMs() >= 0) {
+        sb.append(sb.length() == 0 ? "" : ", ").append(s.getName()).append(' ').append(s.getDurationSeconds())
+            .append('s');
+      }
     }
-
-    return mylist;
+    return sb.toString();
   }
 
-  private EnvironmentVariable createEnvVariable(String key, String value) {
-    EnvironmentVariable var1 = new EnvironmentVariable();
-    var1.setName(key);
-    var1.setType("PLAINTEXT");
-    var1.setValue(value);
+  /**
+   * Called by {@link CodeBuildComputerListener} once the agent's channel is up.
+   */
+  void agentOnline() {
+    CompletableFuture<Void> c = connection;
+    if (c != null) {
+      c.complete(null);
+    }
+  }
 
-    return var1;
+  private void launchFailed(@NonNull CodeBuildComputer computer, @NonNull CodeBuildAgent node, @NonNull Throwable e) {
+    LOGGER.severe(String.format("Exception while starting build: %s.  Exception %s", e.getMessage(), e));
+    computer.getListener().fatalError("Exception while starting build: %s", e.getMessage());
 
+    // Node will stop the AWS CodeBuild build. See _terminate
+    cloud.getLaunchExecutor().submit(() -> {
+      try {
+        node.terminate();
+      } catch (IOException | InterruptedException e1) {
+        LOGGER.severe(String.format("Failed to terminate agent: %s.  Exception: %s", node.getDisplayName(), e1));
+      }
+    });
   }
 }
@@ -0,0 +1,119 @@
+package io.jenkins.plugins.codebuildcloud;
+
+import org.apache.commons.lang.StringUtils;
+import org.kohsuke.stapler.AncestorInPath;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.verb.POST;
+
+import com.cloudbees.jenkins.plugins.awscredentials.AWSCredentialsHelper;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Descriptor;
+import hudson.model.ItemGroup;
+import hudson.util.FormValidation;
+import hudson.util.ListBoxModel;
+import jenkins.model.Jenkins;
+
+/**
+ * An extra CodeBuild project a {@link CodeBuildCloud} can launch agents on, on
+ * top of its main project. Optionally in another AWS account through its own
+ * credentials.
+ */
+public class CodeBuildProjectTarget extends AbstractDescribableImpl<CodeBuildProjectTarget> {
+
+  private static final Integer DEFAULT_WEIGHT = 1;
+
+  @NonNull
+  private String codeBuildProjectName;
+
+  private String credentialId;
+
+  private Integer weight;
+
+  @DataBoundConstructor
+  public CodeBuildProjectTarget(@NonNull String codeBuildProjectName) {
+    this.codeBuildProjectName = codeBuildProjectName;
+  }
+
+  @NonNull
+  public String getCodeBuildProjectName() {
+    return codeBuildProjectName;
+  }
+
+  public String getCredentialId() {
+    return credentialId;
+  }
+
+  @DataBoundSetter
+  public void setCredentialId(String credentialId) {
+    this.credentialId = credentialId;
+  }
+
+  @NonNull
+  public Integer getWeight() {
+    return weight == null || weight < 1 ? DEFAULT_WEIGHT : weight;
+  }
+
+  @DataBoundSetter
+  public void setWeight(Integer weight) {
+    this.weight = weight;
+  }
+
+  /**
+   * Resolves this project against the cloud it belongs to. Blank credentials
+   * mean the cloud's credentials.
+   */
+  @NonNull
+  CodeBuildLaunchTarget toLaunchTarget(@NonNull CodeBuildCloud cloud) {
+    String credentials = StringUtils.isBlank(credentialId) ? cloud.getCredentialId() : credentialId;
+    return new CodeBuildLaunchTarget(codeBuildProjectName, credentials, cloud.getRegion(), getWeight(),
+        cloud.getDockerImage());
+  }
+
+  @Extension
+  public static class DescriptorImpl extends Descriptor<CodeBuildProjectTarget> {
+
+    @POST
+    public ListBoxModel doFillCredentialIdItems(@AncestorInPath ItemGroup context) {
+      CodeBuildCloud.getJenkins().checkPermission(Jenkins.ADMINISTER);
+      return AWSCredentialsHelper.doFillCredentialsIdItems(context);
+    }
+
+    @POST
+    public FormValidation doCheckCodeBuildProjectName(@QueryParameter String value) {
+      CodeBuildCloud.getJenkins().checkPermission(Jenkins.ADMINISTER);
+      if (StringUtils.isBlank(value)) {
+        return FormValidation.error("Must include a CodeBuild project name");
+      }
+      return FormValidation.ok();
+    }
+
+    @POST
+    public FormValidation doCheckWeight(@QueryParameter String value) {
+      CodeBuildCloud.getJenkins().checkPermission(Jenkins.ADMINISTER);
+      try {
+        if (Integer.parseInt(value) >= 1) {
+          return FormValidation.ok();
+        }
+      } catch (NumberFormatException e) {
+        // Fall through
+      }
+      return FormValidation.error("Weight must be a whole number of at least 1");
+    }
+
+    // Special naming convention that makes jelly work get****
+    @POST
+    public Integer getDefaultWeight() {
+      return DEFAULT_WEIGHT;
+    }
+
+    @Override
+    public String getDisplayName() {
+      return "CodeBuild Project";
+    }
+  }
+}
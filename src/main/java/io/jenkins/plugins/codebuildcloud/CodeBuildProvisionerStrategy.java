@@ -0,0 +1,139 @@
+package io.jenkins.plugins.codebuildcloud;
+
+import java.util.Collection;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.Label;
+import hudson.model.LoadStatistics;
+import hudson.model.queue.CauseOfBlockage;
+import hudson.slaves.Cloud;
+import hudson.slaves.CloudProvisioningListener;
+import hudson.slaves.NodeProvisioner;
+import jenkins.util.SystemProperties;
+
+/**
+ * Provisions CodeBuild agents for the whole queue on the first
+ * {@link NodeProvisioner} tick. The default strategy waits for its load
+ * predictor to catch up, which adds tens of seconds on top of the CodeBuild
+ * cold start. Labels no {@link CodeBuildCloud} serves are left to the other
+ * strategies.
+ *
+ * Same approach as the Kubernetes and EC2 Fleet plugins. Set the system
+ * property <code>io.jenkins.plugins.codebuildcloud.CodeBuildProvisionerStrategy.disabled</code>
+ * to fall back to the default strategy.
+ */
+@Extension(ordinal = 100)
+public class CodeBuildProvisionerStrategy extends NodeProvisioner.Strategy {
+
+  private static final Logger LOGGER = Logger.getLogger(CodeBuildProvisionerStrategy.class.getName());
+
+  static final boolean DISABLED = SystemProperties
+      .getBoolean(CodeBuildProvisionerStrategy.class.getName() + ".disabled");
+
+  /** {@inheritDoc} */
+  @NonNull
+  @Override
+  public NodeProvisioner.StrategyDecision apply(@NonNull NodeProvisioner.StrategyState state) {
+    if (DISABLED) {
+      return NodeProvisioner.StrategyDecision.CONSULT_REMAINING_STRATEGIES;
+    }
+
+    Label label = state.getLabel();
+    if (!isServed(label)) {
+      return NodeProvisioner.StrategyDecision.CONSULT_REMAINING_STRATEGIES;
+    }
+
+    LoadStatistics.LoadStatisticsSnapshot snapshot = state.getSnapshot();
+
+    // Exact numbers right now, no smoothing. Planned capacity covers agents
+    // still being added or connecting from earlier ticks.
+    int available = snapshot.getAvailableExecutors() + snapshot.getConnectingExecutors()
+        + state.getPlannedCapacitySnapshot() + state.getAdditionalPlannedCapacity();
+    int demand = snapshot.getQueueLength();
+    LOGGER.finest(String.format("Label '%s': demand %s, available %s", label, demand, available));
+
+    if (available < demand) {
+      for (Cloud cloud : CodeBuildCloud.getJenkins().clouds) {
+        if (!(cloud instanceof CodeBuildCloud)) {
+          continue;
+        }
+
+        Cloud.CloudState cloudState = new Cloud.CloudState(label, state.getAdditionalPlannedCapacity());
+        if (!cloud.canProvision(cloudState)) {
+          continue;
+        }
+
+        CauseOfBlockage veto = vetoed(cloud, cloudState, demand - available);
+        if (veto != null) {
+          LOGGER.fine(String.format("Cloud '%s' not provisioning for label '%s': %s", cloud.name, label,
+              veto.getShortDescription()));
+          continue;
+        }
+
+        Collection<NodeProvisioner.PlannedNode> planned = cloud.provision(cloudState, demand - available);
+        if (planned.isEmpty()) {
+          continue;
+        }
+
+        LOGGER.fine(String.format("Cloud '%s' provisioning %s agents for label '%s' right away", cloud.name,
+            planned.size(), label));
+        fireOnStarted(cloud, label, planned);
+        state.recordPendingLaunches(planned);
+        for (NodeProvisioner.PlannedNode p : planned) {
+          available += p.numExecutors;
+        }
+        if (available >= demand) {
+          break;
+        }
+      }
+    }
+
+    if (available >= demand) {
+      return NodeProvisioner.StrategyDecision.PROVISIONING_COMPLETED;
+    }
+    return NodeProvisioner.StrategyDecision.CONSULT_REMAINING_STRATEGIES;
+  }
+
+  private static boolean isServed(Label label) {
+    for (Cloud cloud : CodeBuildCloud.getJenkins().clouds) {
+      if (cloud instanceof CodeBuildCloud && cloud.canProvision(new Cloud.CloudState(label, 0))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * The default strategy lets listeners veto provisioning, so this one does
+   * too.
+   */
+  private static CauseOfBlockage vetoed(Cloud cloud, Cloud.CloudState state, int excessWorkload) {
+    for (CloudProvisioningListener l : CloudProvisioningListener.all()) {
+      CauseOfBlockage cause = l.canProvision(cloud, state, excessWorkload);
+      if (cause != null) {
+        return cause;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * The default strategy tells listeners about the nodes it plans, so this one
+   * does too.
+   */
+  private static void fireOnStarted(Cloud cloud, Label label, Collection<NodeProvisioner.PlannedNode> planned) {
+    for (CloudProvisioningListener l : CloudProvisioningListener.all()) {
+      try {
+        l.onStarted(cloud, label, planned);
+      } catch (Error e) {
+        throw e;
+      } catch (Throwable e) {
+        LOGGER.log(Level.SEVERE, String.format("Unexpected uncaught exception encountered while processing "
+            + "onStarted() listener call in %s for label %s", l, label), e);
+      }
+    }
+  }
+}
@@ -0,0 +1,132 @@
+package io.jenkins.plugins.codebuildcloud;
+
+import org.apache.commons.lang.StringUtils;
+import org.kohsuke.stapler.AncestorInPath;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.verb.POST;
+
+import com.amazonaws.regions.Region;
+import com.amazonaws.regions.RegionUtils;
+import com.amazonaws.services.codebuild.AWSCodeBuild;
+import com.cloudbees.jenkins.plugins.awscredentials.AWSCredentialsHelper;
+import com.cloudbees.plugins.credentials.common.StandardListBoxModel;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Descriptor;
+import hudson.model.ItemGroup;
+import hudson.util.FormValidation;
+import hudson.util.ListBoxModel;
+import jenkins.model.Jenkins;
+
+/**
+ * A region a {@link CodeBuildCloud} spills new launches over to while its own
+ * region is degraded, with the CodeBuild project and image to use there.
+ */
+public class CodeBuildRegionFallback extends AbstractDescribableImpl<CodeBuildRegionFallback> {
+
+  @NonNull
+  private String region;
+
+  @NonNull
+  private String codeBuildProjectName;
+
+  private String credentialId;
+
+  private String dockerImage;
+
+  @DataBoundConstructor
+  public CodeBuildRegionFallback(@NonNull String region, @NonNull String codeBuildProjectName) {
+    this.region = region;
+    this.codeBuildProjectName = codeBuildProjectName;
+  }
+
+  @NonNull
+  public String getRegion() {
+    return region;
+  }
+
+  @NonNull
+  public String getCodeBuildProjectName() {
+    return codeBuildProjectName;
+  }
+
+  public String getCredentialId() {
+    return credentialId;
+  }
+
+  @DataBoundSetter
+  public void setCredentialId(String credentialId) {
+    this.credentialId = credentialId;
+  }
+
+  public String getDockerImage() {
+    return dockerImage;
+  }
+
+  @DataBoundSetter
+  public void setDockerImage(String dockerImage) {
+    this.dockerImage = dockerImage;
+  }
+
+  /**
+   * Resolves this fallback against the cloud it belongs to. Blank credentials
+   * or image mean the cloud's.
+   */
+  @NonNull
+  CodeBuildLaunchTarget toLaunchTarget(@NonNull CodeBuildCloud cloud) {
+    String credentials = StringUtils.isBlank(credentialId) ? cloud.getCredentialId() : credentialId;
+    String image = StringUtils.isBlank(dockerImage) ? cloud.getDockerImage() : dockerImage;
+    return new CodeBuildLaunchTarget(codeBuildProjectName, credentials, region, 1, image);
+  }
+
+  @Extension
+  public static class DescriptorImpl extends Descriptor<CodeBuildRegionFallback> {
+
+    @POST
+    public ListBoxModel doFillRegionItems() {
+      CodeBuildCloud.getJenkins().checkPermission(Jenkins.ADMINISTER);
+
+      final StandardListBoxModel options = new StandardListBoxModel();
+      options.includeEmptyValue();
+
+      // NO AWS API Calls here
+      for (Region r : RegionUtils.getRegionsForService(AWSCodeBuild.ENDPOINT_PREFIX)) {
+        options.add(r.getName());
+      }
+      return options;
+    }
+
+    @POST
+    public ListBoxModel doFillCredentialIdItems(@AncestorInPath ItemGroup context) {
+      CodeBuildCloud.getJenkins().checkPermission(Jenkins.ADMINISTER);
+      return AWSCredentialsHelper.doFillCredentialsIdItems(context);
+    }
+
+    @POST
+    public FormValidation doCheckRegion(@QueryParameter String value) {
+      CodeBuildCloud.getJenkins().checkPermission(Jenkins.ADMINISTER);
+      if (StringUtils.isBlank(value)) {
+        return FormValidation.error("Must include a region");
+      }
+      return FormValidation.ok();
+    }
+
+    @POST
+    public FormValidation doCheckCodeBuildProjectName(@QueryParameter String value) {
+      CodeBuildCloud.getJenkins().checkPermission(Jenkins.ADMINISTER);
+      if (StringUtils.isBlank(value)) {
+        return FormValidation.error("Must include a CodeBuild project name");
+      }
+      return FormValidation.ok();
+    }
+
+    @Override
+    public String getDisplayName() {
+      return "CodeBuild Fallback Region";
+    }
+  }
+}
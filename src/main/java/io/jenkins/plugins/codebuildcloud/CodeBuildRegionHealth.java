@@ -0,0 +1,123 @@
+package io.jenkins.plugins.codebuildcloud;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Tracks how well each CodeBuild region a cloud launches into is doing, from
+ * what the launcher sees: how long builds queue before they start running, and
+ * how often StartBuild or the agent connection fails. Both are exponentially
+ * weighted moving averages.
+ *
+ * A region becomes degraded when either average crosses its threshold, and
+ * healthy again only once both have fallen below half of it, so launches do
+ * not flap between regions. Nothing is launched into a degraded region, so it
+ * gets no new samples - after {@link #RECOVERY_PROBE_NANOS} without any it is
+ * considered healthy again and the next launches probe it.
+ *
+ * Kept per cloud name, like {@link CodeBuildAgentRegistry}, so it survives
+ * configuration saves.
+ */
+public class CodeBuildRegionHealth {
+
+  private static final Logger LOGGER = Logger.getLogger(CodeBuildRegionHealth.class.getName());
+
+  private static final ConcurrentMap<String, CodeBuildRegionHealth> HEALTH = new ConcurrentHashMap<String, CodeBuildRegionHealth>();
+
+  // Weight of the newest sample
+  private static final double ALPHA = 0.3;
+  private static final double MAX_ERROR_RATE = 0.5;
+  private static final double RECOVERY_RATIO = 0.5;
+  static final long RECOVERY_PROBE_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+  private static final class Region {
+    double queueSeconds;
+    double errorRate;
+    boolean sampled;
+    boolean degraded;
+    long lastSample;
+  }
+
+  private final LongSupplier clock;
+  private final ConcurrentMap<String, Region> regions = new ConcurrentHashMap<String, Region>();
+
+  // Tests supply their own clock
+  CodeBuildRegionHealth(@NonNull LongSupplier clock) {
+    this.clock = clock;
+  }
+
+  @NonNull
+  static CodeBuildRegionHealth forCloud(@NonNull String cloudName) {
+    return HEALTH.computeIfAbsent(cloudName, n -> new CodeBuildRegionHealth(System::nanoTime));
+  }
+
+  /** A build in this region left the queue after this many seconds. */
+  public void recordQueueTime(@NonNull String region, double seconds, int maxQueueSeconds) {
+    Region r = region(region);
+    synchronized (r) {
+      r.queueSeconds = r.sampled ? ALPHA * seconds + (1 - ALPHA) * r.queueSeconds : seconds;
+      sample(region, r, maxQueueSeconds);
+    }
+  }
+
+  /** A launch in this region got its build started. */
+  public void recordSuccess(@NonNull String region, int maxQueueSeconds) {
+    recordOutcome(region, 0, maxQueueSeconds);
+  }
+
+  /** A launch in this region failed to start its build or connect its agent. */
+  public void recordError(@NonNull String region, int maxQueueSeconds) {
+    recordOutcome(region, 1, maxQueueSeconds);
+  }
+
+  private void recordOutcome(String region, double outcome, int maxQueueSeconds) {
+    Region r = region(region);
+    synchronized (r) {
+      r.errorRate = ALPHA * outcome + (1 - ALPHA) * r.errorRate;
+      sample(region, r, maxQueueSeconds);
+    }
+  }
+
+  private void sample(String name, Region r, int maxQueueSeconds) {
+    r.sampled = true;
+    r.lastSample = clock.getAsLong();
+
+    boolean was = r.degraded;
+    if (r.degraded) {
+      r.degraded = r.queueSeconds >= maxQueueSeconds * RECOVERY_RATIO || r.errorRate >= MAX_ERROR_RATE * RECOVERY_RATIO;
+    } else {
+      r.degraded = r.queueSeconds > maxQueueSeconds || r.errorRate > MAX_ERROR_RATE;
+    }
+
+    if (was != r.degraded) {
+      LOGGER.info(String.format("CodeBuild region %s is %s (queue time %.0fs, error rate %.2f)", name,
+          r.degraded ? "degraded" : "healthy again", r.queueSeconds, r.errorRate));
+    }
+  }
+
+  /** Whether new launches should avoid this region for now. */
+  public boolean isDegraded(@NonNull String region) {
+    Region r = regions.get(region);
+    if (r == null) {
+      return false;
+    }
+    synchronized (r) {
+      if (r.degraded && clock.getAsLong() - r.lastSample > RECOVERY_PROBE_NANOS) {
+        // Start over, so the probing launches decide on their own
+        LOGGER.info(String.format("Probing CodeBuild region %s again", region));
+        regions.remove(region, r);
+        return false;
+      }
+      return r.degraded;
+    }
+  }
+
+  private Region region(String region) {
+    return regions.computeIfAbsent(region, n -> new Region());
+  }
+}
@@ -0,0 +1,90 @@
+package io.jenkins.plugins.codebuildcloud;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import jenkins.security.MasterToSlaveCallable;
+
+/**
+ * Runs on a CodeBuild agent and reads how much memory and CPU its container
+ * has used so far from the cgroup files, v2 first and v1 otherwise. Values the
+ * agent cannot read are reported as -1.
+ */
+public class CodeBuildResourceProbe extends MasterToSlaveCallable<CodeBuildResourceProbe.Usage, IOException> {
+
+  private static final long serialVersionUID = 1;
+
+  private static final String CGROUP = "/sys/fs/cgroup/";
+
+  /** Snapshot of the container's resource usage. */
+  public static class Usage implements Serializable {
+    private static final long serialVersionUID = 1;
+
+    private final long peakMemoryBytes;
+    private final long cpuNanos;
+
+    Usage(long peakMemoryBytes, long cpuNanos) {
+      this.peakMemoryBytes = peakMemoryBytes;
+      this.cpuNanos = cpuNanos;
+    }
+
+    public long getPeakMemoryBytes() {
+      return peakMemoryBytes;
+    }
+
+    /** CPU time used by the container since it started. */
+    public long getCpuNanos() {
+      return cpuNanos;
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Usage call() throws IOException {
+    long memory = readLong(CGROUP + "memory.peak");
+    if (memory < 0) {
+      memory = readLong(CGROUP + "memory/memory.max_usage_in_bytes");
+    }
+
+    long cpu = readCpuStatMicros(CGROUP + "cpu.stat");
+    if (cpu >= 0) {
+      cpu *= 1000;
+    } else {
+      cpu = readLong(CGROUP + "cpuacct/cpuacct.usage");
+    }
+
+    return new Usage(memory, cpu);
+  }
+
+  private static long readLong(String path) {
+    File f = new File(path);
+    if (!f.canRead()) {
+      return -1;
+    }
+    try {
+      return Long.parseLong(new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8).trim());
+    } catch (IOException | NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private static long readCpuStatMicros(String path) {
+    File f = new File(path);
+    if (!f.canRead()) {
+      return -1;
+    }
+    try {
+      for (String line : Files.readAllLines(f.toPath(), StandardCharsets.UTF_8)) {
+        if (line.startsWith("usage_usec ")) {
+          return Long.parseLong(line.substring("usage_usec ".length()).trim());
+        }
+      }
+    } catch (IOException | NumberFormatException e) {
+      // Fall through
+    }
+    return -1;
+  }
+}
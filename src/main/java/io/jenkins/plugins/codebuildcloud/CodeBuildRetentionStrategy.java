@@ -1,14 +1,20 @@
 package io.jenkins.plugins.codebuildcloud;
 
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
 
+import org.jenkinsci.plugins.durabletask.executors.ContinuableExecutable;
 import org.jenkinsci.plugins.durabletask.executors.OnceRetentionStrategy;
 
+import hudson.model.Computer;
 import hudson.model.Executor;
 import hudson.model.ExecutorListener;
 import hudson.model.Queue;
 import hudson.slaves.AbstractCloudComputer;
 import hudson.slaves.CloudRetentionStrategy;
+import jenkins.util.Timer;
 
 public class CodeBuildRetentionStrategy extends CloudRetentionStrategy
     implements ExecutorListener {
@@ -16,6 +22,10 @@ public class CodeBuildRetentionStrategy extends CloudRetentionStrategy
   private OnceRetentionStrategy realStrat;
   private static final Logger LOGGER = Logger.getLogger(OnceRetentionStrategy.class.getName());
 
+  // Idling starts a little after taskCompleted, once Jenkins has replaced the
+  // executor, so expiry is checked this much after it is due
+  private static final long EXPIRY_MARGIN_MS = 500;
+
   public CodeBuildRetentionStrategy() {
     super(1);
     realStrat = new OnceRetentionStrategy(1);
@@ -32,10 +42,138 @@ public class CodeBuildRetentionStrategy extends CloudRetentionStrategy
       // Let the launcher handle it and dont activate any OnceRetentionStrategies yet.
       LOGGER.finest("Retention strategy check disabled - letting Launcher class handle lifecycle");
       return 1;
+    } else if (isKeptWarm(c)) {
+      // Idle and never used - part of the warm pool, do not let OnceRetentionStrategy
+      // reap it for being idle. The pool shrinks back when a capacity profile
+      // window closes, and the surplus is reaped below.
+      LOGGER.finest("Retention strategy check skipped - agent is part of the warm pool");
+      return 1;
+    } else if (isKeptForReuse(c)) {
+      // Used before and lingering for the next task - OnceRetentionStrategy would
+      // reap it after a minute of idling
+      LOGGER.finest("Retention strategy check skipped - agent is kept for reuse");
+      return 1;
     } else {
       LOGGER.finest("Retention strategy OnceRetentionStrategy check enabled");
-      return realStrat.check(c);
+      long result = realStrat.check(c);
+      if (!c.isAcceptingTasks() && c.isIdle() && c instanceof CodeBuildComputer) {
+        // OnceRetentionStrategy disabled it and is terminating it
+        ((CodeBuildComputer) c).transition(CodeBuildAgentRegistry.State.TERMINATING);
+      }
+      return result;
+    }
+  }
+
+  private static CodeBuildCloud cloudOf(final Computer c) {
+    if (!(c instanceof CodeBuildComputer)) {
+      return null;
+    }
+    CodeBuildAgent node = ((CodeBuildComputer) c).getNode();
+    return node == null ? null : node.cloud;
+  }
+
+  private boolean isKeptWarm(final AbstractCloudComputer c) {
+    CodeBuildCloud cloud = cloudOf(c);
+    return cloud != null && cloud.shouldKeepWarm((CodeBuildComputer) c);
+  }
+
+  private boolean isKeptForReuse(final AbstractCloudComputer c) {
+    CodeBuildCloud cloud = cloudOf(c);
+    if (cloud == null || !cloud.isReuseEnabled() || !c.isAcceptingTasks()) {
+      return false;
+    }
+    return !expireIfIdle((CodeBuildComputer) c, cloud);
+  }
+
+  /**
+   * Terminates a reused agent once it has idled for the linger time.
+   *
+   * @return whether the agent is being terminated.
+   */
+  private static boolean expireIfIdle(final CodeBuildComputer c, final CodeBuildCloud cloud) {
+    long idleMs = System.currentTimeMillis() - c.getIdleStartMilliseconds();
+    if (!c.isIdle() || idleMs < TimeUnit.SECONDS.toMillis(cloud.getReuseIdleSeconds())) {
+      return false;
+    }
+
+    // Under the queue lock, so the queue cannot hand it a task at the same time
+    AtomicBoolean expired = new AtomicBoolean();
+    Queue.withLock(() -> {
+      if (c.isIdle() && c.isAcceptingTasks()) {
+        c.setAcceptingTasks(false);
+        c.transition(CodeBuildAgentRegistry.State.TERMINATING);
+        expired.set(true);
+      }
+    });
+    if (!expired.get()) {
+      return false;
+    }
+
+    LOGGER.fine(String.format("Agent %s idled for %sms after %s tasks, terminating", c.getName(), idleMs,
+        c.getCompletedTasks()));
+    CodeBuildAgent node = c.getNode();
+    if (node != null) {
+      cloud.getLaunchExecutor().submit(() -> {
+        try {
+          node.terminate();
+        } catch (IOException | InterruptedException e) {
+          LOGGER.severe(String.format("Failed to terminate agent: %s.  Exception: %s", node.getDisplayName(), e));
+        }
+      });
+    }
+    return true;
+  }
+
+  /**
+   * In reuse mode the agent goes back to idle after a task instead of being
+   * terminated, until it has run the configured number of tasks. It is
+   * terminated once it idles for the linger time without being claimed.
+   */
+  private boolean keepForReuse(Executor executor) {
+    Computer c = executor.getOwner();
+    CodeBuildCloud cloud = cloudOf(c);
+    if (cloud == null || !cloud.isReuseEnabled() || !c.isAcceptingTasks()) {
+      return false;
+    }
+
+    CodeBuildComputer computer = (CodeBuildComputer) c;
+    int maxTasks = cloud.getReuseMaxTasks();
+    if (maxTasks > 0 && computer.getCompletedTasks() >= maxTasks) {
+      LOGGER.fine(String.format("Agent %s ran %s tasks, not reusing it", c.getName(), computer.getCompletedTasks()));
+      return false;
+    }
+
+    if (!isOtherExecutorBusy(executor)) {
+      computer.transition(CodeBuildAgentRegistry.State.IDLE);
+    }
+    scheduleExpiry(computer, cloud, TimeUnit.SECONDS.toMillis(cloud.getReuseIdleSeconds()) + EXPIRY_MARGIN_MS);
+    return true;
+  }
+
+  /**
+   * Checks a reused agent for expiry after a delay. If it has not idled for the
+   * linger time yet, checks again when it will have, so it does not wait for
+   * the next retention check.
+   */
+  private static void scheduleExpiry(final CodeBuildComputer c, final CodeBuildCloud cloud, long delayMs) {
+    Timer.get().schedule(() -> {
+      if (c.getNode() == null || !c.isIdle() || !c.isAcceptingTasks() || expireIfIdle(c, cloud)) {
+        // Gone, claimed again - its next task schedules a new check - or expired
+        return;
+      }
+      long idleMs = System.currentTimeMillis() - c.getIdleStartMilliseconds();
+      long lingerMs = TimeUnit.SECONDS.toMillis(cloud.getReuseIdleSeconds());
+      scheduleExpiry(c, cloud, Math.max(0, lingerMs - idleMs) + EXPIRY_MARGIN_MS);
+    }, delayMs, TimeUnit.MILLISECONDS);
+  }
+
+  private static boolean isOtherExecutorBusy(Executor executor) {
+    for (Executor other : executor.getOwner().getExecutors()) {
+      if (other != executor && other.isBusy()) {
+        return true;
+      }
     }
+    return false;
   }
 
   @Override
@@ -51,13 +189,47 @@ public class CodeBuildRetentionStrategy extends CloudRetentionStrategy
 
   @Override
   public void taskCompleted(Executor executor, Queue.Task task, long durationMS) {
-    realStrat.taskCompleted(executor, task, durationMS);
+    if (keepForReuse(executor)) {
+      return;
+    }
+    if (isLastBusyExecutor(executor)) {
+      realStrat.taskCompleted(executor, task, durationMS);
+    }
   }
 
   @Override
   public void taskCompletedWithProblems(Executor executor, Queue.Task task,
       long durationMS, Throwable problems) {
-    realStrat.taskCompletedWithProblems(executor, task, durationMS, problems);
+    if (isLastBusyExecutor(executor)) {
+      realStrat.taskCompletedWithProblems(executor, task, durationMS, problems);
+    }
+  }
+
+  /**
+   * OnceRetentionStrategy terminates the agent as soon as any task completes,
+   * which would kill the tasks on its other executors. With several executors
+   * the agent keeps taking tasks while any executor is busy, so jobs arriving
+   * one after another share its startup cost too. OnceRetentionStrategy only
+   * gets to terminate it once the last busy executor completes. If the last two
+   * finish together and both miss it, check() reaps the idle agent.
+   */
+  private boolean isLastBusyExecutor(Executor executor) {
+    Computer c = executor.getOwner();
+    if (c.getNumExecutors() <= 1) {
+      return true;
+    }
+
+    Queue.Executable exec = executor.getCurrentExecutable();
+    if (exec instanceof ContinuableExecutable && ((ContinuableExecutable) exec).willContinue()) {
+      // The same work continues on this agent - OnceRetentionStrategy leaves it alone too
+      return true;
+    }
+
+    if (isOtherExecutorBusy(executor)) {
+      LOGGER.finest(String.format("Agent %s kept, %s executors still busy", c.getName(), c.countBusy() - 1));
+      return false;
+    }
+    return true;
   }
 
 }
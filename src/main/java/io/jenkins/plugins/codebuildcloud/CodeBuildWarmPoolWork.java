@@ -0,0 +1,51 @@
+package io.jenkins.plugins.codebuildcloud;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import hudson.slaves.Cloud;
+
+/**
+ * Keeps each {@link CodeBuildCloud} warm pool at its configured minimum of idle,
+ * already connected agents.
+ */
+@Extension
+public class CodeBuildWarmPoolWork extends AsyncPeriodicWork {
+
+  private static final Logger LOGGER = Logger.getLogger(CodeBuildWarmPoolWork.class.getName());
+  private static final long RECURRENCE_PERIOD = TimeUnit.SECONDS.toMillis(15);
+
+  public CodeBuildWarmPoolWork() {
+    super("CodeBuild warm pool");
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getRecurrencePeriod() {
+    return RECURRENCE_PERIOD;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected void execute(TaskListener listener) {
+    for (Cloud c : CodeBuildCloud.getJenkins().clouds) {
+      if (c instanceof CodeBuildCloud) {
+        try {
+          ((CodeBuildCloud) c).maintainWarmPool();
+        } catch (Exception e) {
+          LOGGER.log(Level.WARNING, String.format("Failed to refill warm pool for cloud '%s'", c.name), e);
+        }
+      }
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected Level getNormalLoggingLevel() {
+    return Level.FINEST;
+  }
+}
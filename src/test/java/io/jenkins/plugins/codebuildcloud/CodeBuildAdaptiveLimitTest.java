@@ -0,0 +1,73 @@
+package io.jenkins.plugins.codebuildcloud;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.codebuild.model.AccountLimitExceededException;
+import com.amazonaws.services.codebuild.model.InvalidInputException;
+
+public class CodeBuildAdaptiveLimitTest {
+
+  private final AtomicLong now = new AtomicLong();
+
+  @Test
+  public void testHalvesOncePerBurstOfPushback() {
+    CodeBuildAdaptiveLimit limit = new CodeBuildAdaptiveLimit(40, now::get);
+
+    limit.onPushback();
+    limit.onPushback();
+    Assert.assertEquals(20, limit.getLimit(50));
+
+    now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+    limit.onPushback();
+    Assert.assertEquals(10, limit.getLimit(50));
+  }
+
+  @Test
+  public void testGrowsBackAfterSuccesses() {
+    CodeBuildAdaptiveLimit limit = new CodeBuildAdaptiveLimit(4, now::get);
+    limit.onPushback();
+    Assert.assertEquals(2, limit.getLimit(50));
+
+    // 2 + 1/2 + 1/2.5 + ... crosses 4 on the sixth success
+    for (int i = 0; i < 6; i++) {
+      limit.onSuccess(50);
+    }
+    Assert.assertEquals(4, limit.getLimit(50));
+  }
+
+  @Test
+  public void testNeverExceedsCeiling() {
+    CodeBuildAdaptiveLimit limit = new CodeBuildAdaptiveLimit(5, now::get);
+    for (int i = 0; i < 100; i++) {
+      limit.onSuccess(5);
+    }
+    Assert.assertEquals(5, limit.getLimit(5));
+    Assert.assertEquals(3, limit.getLimit(3));
+  }
+
+  @Test
+  public void testSavingTheCloudKeepsWhatWasLearned() {
+    CodeBuildAdaptiveLimit limit = CodeBuildAdaptiveLimit.forCloud("testSavingTheCloudKeepsWhatWasLearned", 8);
+    limit.onPushback();
+    Assert.assertEquals(4, limit.getLimit(8));
+
+    // A save builds a new cloud with the same name
+    limit = CodeBuildAdaptiveLimit.forCloud("testSavingTheCloudKeepsWhatWasLearned", 8);
+    Assert.assertEquals(4, limit.getLimit(8));
+  }
+
+  @Test
+  public void testIsPushback() {
+    AmazonServiceException throttled = new AmazonServiceException("Rate exceeded");
+    throttled.setErrorCode("ThrottlingException");
+    Assert.assertTrue(CodeBuildAdaptiveLimit.isPushback(throttled));
+    Assert.assertTrue(CodeBuildAdaptiveLimit.isPushback(new AccountLimitExceededException("Too many builds")));
+    Assert.assertFalse(CodeBuildAdaptiveLimit.isPushback(new InvalidInputException("Bad image")));
+    Assert.assertFalse(CodeBuildAdaptiveLimit.isPushback(new RuntimeException()));
+  }
+}
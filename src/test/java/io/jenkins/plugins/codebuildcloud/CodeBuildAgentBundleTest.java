@@ -0,0 +1,31 @@
+package io.jenkins.plugins.codebuildcloud;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CodeBuildAgentBundleTest {
+
+  private static final String SHA = "0123abcd";
+
+  @Test
+  public void testIfNoneMatch() {
+    Assert.assertFalse(CodeBuildAgentBundle.matches(null, SHA));
+    Assert.assertTrue(CodeBuildAgentBundle.matches("W/\"0123abcd\"", SHA));
+    Assert.assertTrue(CodeBuildAgentBundle.matches("\"0123abcd\"", SHA));
+    Assert.assertTrue(CodeBuildAgentBundle.matches("\"other\", W/\"0123abcd\"", SHA));
+    Assert.assertTrue(CodeBuildAgentBundle.matches("*", SHA));
+    Assert.assertFalse(CodeBuildAgentBundle.matches("W/\"other\"", SHA));
+    Assert.assertFalse(CodeBuildAgentBundle.matches("0123abcd", SHA));
+  }
+
+  @Test
+  public void testAcceptsGzip() {
+    Assert.assertFalse(CodeBuildAgentBundle.acceptsGzip(null));
+    Assert.assertFalse(CodeBuildAgentBundle.acceptsGzip("identity"));
+    Assert.assertTrue(CodeBuildAgentBundle.acceptsGzip("deflate, gzip"));
+    Assert.assertTrue(CodeBuildAgentBundle.acceptsGzip("GZIP;q=0.5"));
+    Assert.assertTrue(CodeBuildAgentBundle.acceptsGzip("*"));
+    Assert.assertFalse(CodeBuildAgentBundle.acceptsGzip("gzip;q=0"));
+    Assert.assertFalse(CodeBuildAgentBundle.acceptsGzip("gzip; q=0.0, br"));
+  }
+}
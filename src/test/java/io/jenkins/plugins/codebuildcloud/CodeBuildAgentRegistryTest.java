@@ -0,0 +1,145 @@
+package io.jenkins.plugins.codebuildcloud;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CodeBuildAgentRegistryTest {
+
+  private static final CodeBuildLaunchTarget TARGET1 = new CodeBuildLaunchTarget("project1", "", "us-east-1", 1,
+      "image");
+  private static final CodeBuildLaunchTarget TARGET2 = new CodeBuildLaunchTarget("project2", "", "us-east-1", 1,
+      "image");
+
+  // Registries live as long as the JVM, so every test gets its own cloud name
+  private static CodeBuildAgentRegistry registry(String test) {
+    return CodeBuildAgentRegistry.forCloud(CodeBuildAgentRegistryTest.class.getName() + "." + test);
+  }
+
+  @Test
+  public void testTransitionsMoveCounters() {
+    CodeBuildAgentRegistry registry = registry("transitions");
+    registry.transition("a1", CodeBuildAgentRegistry.State.PROVISIONING);
+    registry.transition("a2", CodeBuildAgentRegistry.State.PROVISIONING);
+    Assert.assertEquals(2, registry.countProvisioning());
+    Assert.assertEquals(0, registry.countOnline());
+
+    registry.transition("a1", CodeBuildAgentRegistry.State.IDLE);
+    registry.transition("a1", CodeBuildAgentRegistry.State.BUSY);
+    Assert.assertEquals(1, registry.countProvisioning());
+    Assert.assertEquals(1, registry.count(CodeBuildAgentRegistry.State.BUSY));
+    Assert.assertEquals(0, registry.count(CodeBuildAgentRegistry.State.IDLE));
+    Assert.assertEquals(2, registry.countProvisionedOrProvisioning());
+  }
+
+  @Test
+  public void testTerminatingIsSticky() {
+    CodeBuildAgentRegistry registry = registry("sticky");
+    registry.transition("a1", CodeBuildAgentRegistry.State.BUSY);
+    registry.transition("a1", CodeBuildAgentRegistry.State.TERMINATING);
+    // A late task completion must not bring it back
+    registry.transition("a1", CodeBuildAgentRegistry.State.IDLE);
+
+    Assert.assertEquals(CodeBuildAgentRegistry.State.TERMINATING, registry.getState("a1"));
+    Assert.assertEquals(1, registry.countTerminating());
+    Assert.assertEquals(0, registry.countOnline());
+    Assert.assertEquals(0, registry.countProvisionedOrProvisioning());
+  }
+
+  @Test
+  public void testRemove() {
+    CodeBuildAgentRegistry registry = registry("remove");
+    registry.transition("a1", CodeBuildAgentRegistry.State.IDLE);
+    registry.assignTarget("a1", TARGET1);
+    registry.assignLabel("a1", "label1");
+    registry.transition("a1", CodeBuildAgentRegistry.State.TERMINATING);
+    registry.remove("a1");
+
+    Assert.assertNull(registry.getState("a1"));
+    Assert.assertEquals(0, registry.countTerminating());
+    Assert.assertEquals(0, registry.countOnTarget(TARGET1));
+    Assert.assertEquals(0, registry.countOnLabel("label1"));
+
+    // Removing an unknown agent changes nothing
+    registry.remove("a1");
+    Assert.assertEquals(0, registry.countTerminating());
+  }
+
+  @Test
+  public void testTargetAndLabelReassignment() {
+    CodeBuildAgentRegistry registry = registry("reassign");
+    // Not counted anywhere until registered
+    registry.assignTarget("a1", TARGET1);
+    Assert.assertEquals(0, registry.countOnTarget(TARGET1));
+
+    registry.transition("a1", CodeBuildAgentRegistry.State.PROVISIONING);
+    registry.transition("a2", CodeBuildAgentRegistry.State.PROVISIONING);
+    Assert.assertEquals(2, registry.countWithoutTarget());
+    registry.assignTarget("a1", TARGET1);
+    registry.assignTarget("a2", TARGET1);
+    Assert.assertEquals(0, registry.countWithoutTarget());
+    registry.assignLabel("a1", "label1");
+    Assert.assertEquals(2, registry.countOnTarget(TARGET1));
+    Assert.assertEquals(1, registry.countOnLabel("label1"));
+
+    // Respilled to another project
+    registry.assignTarget("a1", TARGET2);
+    registry.assignLabel("a1", "label2");
+    Assert.assertEquals(1, registry.countOnTarget(TARGET1));
+    Assert.assertEquals(1, registry.countOnTarget(TARGET2));
+    Assert.assertEquals(0, registry.countOnLabel("label1"));
+    Assert.assertEquals(1, registry.countOnLabel("label2"));
+
+    // Assignments survive state changes, and stop counting once terminating
+    registry.transition("a1", CodeBuildAgentRegistry.State.IDLE);
+    Assert.assertEquals(1, registry.countOnTarget(TARGET2));
+    registry.transition("a1", CodeBuildAgentRegistry.State.TERMINATING);
+    Assert.assertEquals(0, registry.countOnTarget(TARGET2));
+    Assert.assertEquals(0, registry.countOnLabel("label2"));
+    Assert.assertEquals(1, registry.countOnTarget(TARGET1));
+  }
+
+  @Test
+  public void testProvisioningExecutorsByLabel() {
+    CodeBuildAgentRegistry registry = registry("executors");
+    registry.transition("a1", CodeBuildAgentRegistry.State.PROVISIONING);
+    registry.assignLabel("a1", "label1");
+    registry.assignExecutors("a1", 4);
+    registry.transition("a2", CodeBuildAgentRegistry.State.PROVISIONING);
+    registry.assignLabel("a2", "label2");
+    registry.transition("a3", CodeBuildAgentRegistry.State.PROVISIONING);
+    registry.assignLabel("a3", "label1");
+    registry.assignExecutors("a3", 2);
+
+    Assert.assertEquals(Integer.valueOf(6), registry.countProvisioningExecutorsByLabel().get("label1"));
+    Assert.assertEquals(Integer.valueOf(1), registry.countProvisioningExecutorsByLabel().get("label2"));
+
+    // Connected agents no longer cover queued jobs
+    registry.transition("a1", CodeBuildAgentRegistry.State.IDLE);
+    Assert.assertEquals(Integer.valueOf(2), registry.countProvisioningExecutorsByLabel().get("label1"));
+  }
+
+  @Test
+  public void testOnlyUnusedWarmPoolAgentsCountAsWarm() {
+    CodeBuildAgentRegistry registry = registry("warm");
+    registry.transition("warm1", CodeBuildAgentRegistry.State.PROVISIONING);
+    registry.markWarm("warm1");
+    registry.transition("warm2", CodeBuildAgentRegistry.State.PROVISIONING);
+    registry.markWarm("warm2");
+    // Launched for a queued job
+    registry.transition("job1", CodeBuildAgentRegistry.State.PROVISIONING);
+    Assert.assertEquals(2, registry.countWarm(CodeBuildAgentRegistry.State.PROVISIONING));
+    Assert.assertFalse(registry.isWarm("job1"));
+
+    registry.transition("warm1", CodeBuildAgentRegistry.State.IDLE);
+    registry.transition("job1", CodeBuildAgentRegistry.State.IDLE);
+    Assert.assertEquals(1, registry.countWarm(CodeBuildAgentRegistry.State.IDLE));
+    Assert.assertEquals(1, registry.countWarm(CodeBuildAgentRegistry.State.PROVISIONING));
+
+    // Once it ran a task, a lingering agent is no longer part of the pool
+    registry.transition("warm1", CodeBuildAgentRegistry.State.BUSY);
+    registry.transition("warm1", CodeBuildAgentRegistry.State.IDLE);
+    Assert.assertFalse(registry.isWarm("warm1"));
+    Assert.assertEquals(0, registry.countWarm(CodeBuildAgentRegistry.State.IDLE));
+    Assert.assertEquals(2, registry.count(CodeBuildAgentRegistry.State.IDLE));
+  }
+}
@@ -0,0 +1,135 @@
+package io.jenkins.plugins.codebuildcloud;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.SdkClientException;
+
+import io.jenkins.plugins.codebuildcloud.CodeBuildApiGuard.ErrorKind;
+
+public class CodeBuildApiGuardTest {
+
+  private final AtomicLong clock = new AtomicLong(1_000_000L);
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+  private final CodeBuildApiGuard guard = new CodeBuildApiGuard("test", clock::get, () -> scheduler);
+
+  @After
+  public void tearDown() {
+    scheduler.shutdownNow();
+  }
+
+  private static AmazonServiceException serviceError(int status, String code) {
+    AmazonServiceException e = new AmazonServiceException("test");
+    e.setStatusCode(status);
+    e.setErrorCode(code);
+    return e;
+  }
+
+  // Fails in a way that is worth retrying, but uses up the whole deadline
+  private String failForGood() {
+    clock.addAndGet(CodeBuildApiGuard.DEADLINE_MS);
+    throw serviceError(503, "ServiceUnavailable");
+  }
+
+  @Test
+  public void testClassify() {
+    Assert.assertEquals(ErrorKind.THROTTLE, CodeBuildApiGuard.classify(serviceError(400, "ThrottlingException")));
+    Assert.assertEquals(ErrorKind.THROTTLE, CodeBuildApiGuard.classify(serviceError(429, "TooManyRequests")));
+    Assert.assertEquals(ErrorKind.TRANSIENT, CodeBuildApiGuard.classify(serviceError(503, "ServiceUnavailable")));
+    Assert.assertEquals(ErrorKind.TRANSIENT, CodeBuildApiGuard.classify(new SdkClientException("timeout")));
+    Assert.assertEquals(ErrorKind.FATAL, CodeBuildApiGuard.classify(serviceError(400, "InvalidInputException")));
+    Assert.assertEquals(ErrorKind.FATAL, CodeBuildApiGuard.classify(new IllegalStateException()));
+  }
+
+  @Test
+  public void testBackoffStaysWithinCeiling() {
+    for (int i = 0; i < 100; i++) {
+      long transientDelay = CodeBuildApiGuard.backoff(ErrorKind.TRANSIENT, 3);
+      long throttleDelay = CodeBuildApiGuard.backoff(ErrorKind.THROTTLE, 30);
+      Assert.assertTrue(transientDelay >= 0 && transientDelay <= 400);
+      Assert.assertTrue(throttleDelay >= 0 && throttleDelay <= TimeUnit.SECONDS.toMillis(5));
+    }
+  }
+
+  @Test
+  public void testRetriesTransientErrors() throws Exception {
+    AtomicInteger calls = new AtomicInteger();
+    String res = guard.call("Test", () -> calls.incrementAndGet() < 3
+        ? CompletableFuture.<String>failedFuture(serviceError(500, "InternalError"))
+        : CompletableFuture.completedFuture("ok")).get(10, TimeUnit.SECONDS);
+    Assert.assertEquals("ok", res);
+    Assert.assertEquals(3, calls.get());
+  }
+
+  @Test
+  public void testDoesNotRetryFatalErrors() {
+    AtomicInteger calls = new AtomicInteger();
+    try {
+      guard.callSync("Test", () -> {
+        calls.incrementAndGet();
+        throw serviceError(400, "InvalidInputException");
+      });
+      Assert.fail();
+    } catch (AmazonServiceException e) {
+      Assert.assertEquals("InvalidInputException", e.getErrorCode());
+    }
+    Assert.assertEquals(1, calls.get());
+    Assert.assertTrue(guard.isAvailable());
+  }
+
+  @Test
+  public void testCircuitOpensAndRecovers() {
+    for (int i = 0; i < CodeBuildApiGuard.FAILURE_THRESHOLD; i++) {
+      Assert.assertTrue(guard.isAvailable());
+      try {
+        guard.callSync("Test", this::failForGood);
+        Assert.fail();
+      } catch (AmazonServiceException e) {
+        // Expected
+      }
+    }
+    Assert.assertFalse(guard.isAvailable());
+
+    AtomicInteger calls = new AtomicInteger();
+    try {
+      guard.callSync("Test", calls::incrementAndGet);
+      Assert.fail();
+    } catch (CodeBuildApiGuard.CircuitOpenException e) {
+      // Expected
+    }
+    Assert.assertEquals(0, calls.get());
+
+    clock.addAndGet(CodeBuildApiGuard.OPEN_MS);
+    Assert.assertTrue(guard.isAvailable());
+    Assert.assertEquals(1, (int) guard.callSync("Test", calls::incrementAndGet));
+    Assert.assertTrue(guard.isAvailable());
+  }
+
+  @Test
+  public void testFailedTrialReopens() {
+    for (int i = 0; i < CodeBuildApiGuard.FAILURE_THRESHOLD; i++) {
+      try {
+        guard.callSync("Test", this::failForGood);
+      } catch (AmazonServiceException e) {
+        // Expected
+      }
+    }
+    clock.addAndGet(CodeBuildApiGuard.OPEN_MS);
+    try {
+      guard.callSync("Test", this::failForGood);
+      Assert.fail();
+    } catch (AmazonServiceException e) {
+      // Expected
+    }
+    Assert.assertFalse(guard.isAvailable());
+  }
+}
@@ -0,0 +1,48 @@
+package io.jenkins.plugins.codebuildcloud;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CodeBuildCapacityProfileTest {
+
+  private static final long LEAD_MS = TimeUnit.MINUTES.toMillis(5);
+
+  private final CodeBuildCapacityProfile morning = new CodeBuildCapacityProfile("0 7 * * *", 60, 10, 100);
+
+  private static Calendar at(int hour, int minute) {
+    return new GregorianCalendar(2023, Calendar.MAY, 10, hour, minute);
+  }
+
+  @Test
+  public void testActiveDuringWindow() {
+    Assert.assertTrue(morning.isActive(at(7, 0), 0));
+    Assert.assertTrue(morning.isActive(at(7, 30), 0));
+    Assert.assertFalse(morning.isActive(at(8, 0), 0));
+    Assert.assertFalse(morning.isActive(at(12, 0), 0));
+  }
+
+  @Test
+  public void testActiveAheadOfWindowByLead() {
+    Assert.assertFalse(morning.isActive(at(6, 58), 0));
+    Assert.assertTrue(morning.isActive(at(6, 58), LEAD_MS));
+    Assert.assertFalse(morning.isActive(at(6, 50), LEAD_MS));
+  }
+
+  @Test
+  public void testInvalidScheduleIsNeverActive() {
+    CodeBuildCapacityProfile broken = new CodeBuildCapacityProfile("not a schedule", 60, 10, 100);
+    Assert.assertFalse(broken.isActive(at(7, 30), LEAD_MS));
+  }
+
+  @Test
+  public void testImpossibleScheduleIsNeverActive() {
+    // Parses, but there is no February 31st
+    CodeBuildCapacityProfile impossible = new CodeBuildCapacityProfile("0 0 31 2 *", 60, 10, 100);
+    Assert.assertFalse(impossible.isActive(at(7, 30), LEAD_MS));
+    Assert.assertFalse(impossible.isActive(at(7, 30), LEAD_MS));
+  }
+}
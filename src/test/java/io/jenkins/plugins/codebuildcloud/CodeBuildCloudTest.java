@@ -1,15 +1,29 @@
 package io.jenkins.plugins.codebuildcloud;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.junit.Assert;
 import org.junit.Rule;
 import org.junit.Test;
 import org.jvnet.hudson.test.JenkinsRule;
 
+import com.amazonaws.services.codebuild.model.EnvironmentVariable;
+import com.amazonaws.services.codebuild.model.StartBuildRequest;
+
 public class CodeBuildCloudTest {
 
   @Rule
   public JenkinsRule j = new JenkinsRule();
 
+  private static CodeBuildCloud newCloud(String jenkinsUrl) {
+    return new CodeBuildCloud("Test1", "hello", "", "us-east-1", "codebuild", 300,
+        "image", "CODEBUILD", "BUILD_GENERAL1_MEDIUM", "LINUX_CONTAINER", "spec", false, 10,
+        "", false, false, false, "", "", "", jenkinsUrl, false);
+  }
+
   @Test
   public void testInitPlugin() throws Exception {
     final CodeBuildCloud cloud = new CodeBuildCloud("Test1", "hello", null, null, null, null, null, null, null, null,
@@ -20,4 +34,62 @@ public class CodeBuildCloudTest {
     Assert.assertEquals("hello", cloud.getCodeBuildProjectName());
   }
 
+  @Test
+  public void testLaunchTemplateIsReusedUntilCredentialsChange() throws Exception {
+    final CodeBuildCloud cloud = newCloud("https://jenkins.example.com:8443/jenkins/");
+
+    CodeBuildLaunchTemplate template = cloud.getLaunchTemplate();
+    Assert.assertSame(template, cloud.getLaunchTemplate());
+
+    StartBuildRequest req = template.newRequest(new CodeBuildLaunchTarget("other", "", "us-east-1", 1, "image2"),
+        "BUILD_GENERAL1_MEDIUM", "s3cr3t", "Test1.abcd");
+    Map<String, String> env = new HashMap<String, String>();
+    for (EnvironmentVariable v : req.getEnvironmentVariablesOverride()) {
+      env.put(v.getName(), v.getValue());
+    }
+    Assert.assertEquals("other", req.getProjectName());
+    Assert.assertEquals("image2", req.getImageOverride());
+    Assert.assertEquals("BUILD_GENERAL1_MEDIUM", req.getComputeTypeOverride());
+    Assert.assertEquals("s3cr3t", env.get("JENKINS_SECRET"));
+    Assert.assertEquals("Test1.abcd", env.get("JENKINS_AGENT_NAME"));
+    String agentUrl = env.get("JENKINS_CODEBUILD_AGENT_URL");
+    Assert.assertTrue(agentUrl, agentUrl.startsWith("https://jenkins.example.com:8443/jenkins/codebuild-agent/"));
+    Assert.assertTrue(agentUrl, agentUrl.endsWith("/agent.jar"));
+    Assert.assertEquals(64, env.get("JENKINS_CODEBUILD_AGENT_SHA256").length());
+
+    CodeBuildClientPool.credentialsChanged();
+    Assert.assertNotSame(template, cloud.getLaunchTemplate());
+  }
+
+  @Test
+  public void testRespillAlternatives() throws Exception {
+    final CodeBuildCloud cloud = newCloud("https://jenkins.example.com/");
+    cloud.setAdditionalProjects(Arrays.asList(new CodeBuildProjectTarget("other")));
+
+    List<CodeBuildLaunchTarget> targets = cloud.getLaunchTargets();
+    List<CodeBuildLaunchTarget> respill = cloud.getRespillTargets(targets.get(0));
+    Assert.assertEquals(1, respill.size());
+    Assert.assertEquals("other", respill.get(0).getProjectName());
+
+    // Compute types only change within a configured range
+    Assert.assertTrue(cloud.getRespillComputeTypes("BUILD_GENERAL1_MEDIUM", null).isEmpty());
+    cloud.setMinComputeType("BUILD_GENERAL1_SMALL");
+    cloud.setMaxComputeType("BUILD_GENERAL1_LARGE");
+    // Nothing is known about the job, so only larger ones
+    Assert.assertEquals(Arrays.asList("BUILD_GENERAL1_LARGE"),
+        cloud.getRespillComputeTypes("BUILD_GENERAL1_MEDIUM", null));
+  }
+
+  @Test
+  public void testRelaunchChains() throws Exception {
+    final CodeBuildCloud cloud = newCloud("https://jenkins.example.com/");
+    Assert.assertEquals(0, (int) cloud.getRelaunchAttempts());
+    Assert.assertTrue(cloud.getRelaunchComputeTypeChain().isEmpty());
+
+    cloud.setRelaunchComputeTypes("BUILD_GENERAL1_LARGE,\n BUILD_GENERAL1_2XLARGE\n");
+    cloud.setRelaunchDockerImages("image2\r\nimage3");
+    Assert.assertEquals(Arrays.asList("BUILD_GENERAL1_LARGE", "BUILD_GENERAL1_2XLARGE"),
+        cloud.getRelaunchComputeTypeChain());
+    Assert.assertEquals(Arrays.asList("image2", "image3"), cloud.getRelaunchDockerImageChain());
+  }
 }
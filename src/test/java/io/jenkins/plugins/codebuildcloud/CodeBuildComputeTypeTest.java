@@ -0,0 +1,74 @@
+package io.jenkins.plugins.codebuildcloud;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CodeBuildComputeTypeTest {
+
+  private static final long GIB = 1024L * 1024 * 1024;
+
+  @Test
+  public void testSmallJobGetsSmallestInRange() {
+    CodeBuildJobHistory.Stats lint = new CodeBuildJobHistory.Stats(30_000, GIB, 0.5);
+    Assert.assertEquals(CodeBuildComputeType.SMALL,
+        CodeBuildComputeType.choose(lint, CodeBuildComputeType.SMALL, CodeBuildComputeType.LARGE));
+    Assert.assertEquals(CodeBuildComputeType.MEDIUM,
+        CodeBuildComputeType.choose(lint, CodeBuildComputeType.MEDIUM, CodeBuildComputeType.LARGE));
+  }
+
+  @Test
+  public void testHeavyJobLeavesHeadroom() {
+    // Fits 7 GiB exactly, but not with headroom
+    CodeBuildJobHistory.Stats build = new CodeBuildJobHistory.Stats(600_000, 6 * GIB, 1);
+    Assert.assertEquals(CodeBuildComputeType.LARGE,
+        CodeBuildComputeType.choose(build, CodeBuildComputeType.SMALL, CodeBuildComputeType.XXLARGE));
+
+    CodeBuildJobHistory.Stats cpuBound = new CodeBuildJobHistory.Stats(600_000, GIB, 3.5);
+    Assert.assertEquals(CodeBuildComputeType.LARGE,
+        CodeBuildComputeType.choose(cpuBound, CodeBuildComputeType.SMALL, CodeBuildComputeType.XXLARGE));
+  }
+
+  @Test
+  public void testNeverAboveMax() {
+    CodeBuildJobHistory.Stats huge = new CodeBuildJobHistory.Stats(600_000, 100 * GIB, 40);
+    Assert.assertEquals(CodeBuildComputeType.LARGE,
+        CodeBuildComputeType.choose(huge, CodeBuildComputeType.SMALL, CodeBuildComputeType.LARGE));
+  }
+
+  @Test
+  public void testClamp() {
+    Assert.assertEquals(CodeBuildComputeType.MEDIUM, CodeBuildComputeType.clamp(CodeBuildComputeType.SMALL,
+        CodeBuildComputeType.MEDIUM, CodeBuildComputeType.LARGE));
+    Assert.assertEquals(CodeBuildComputeType.LARGE, CodeBuildComputeType.clamp(CodeBuildComputeType.XXLARGE,
+        CodeBuildComputeType.MEDIUM, CodeBuildComputeType.LARGE));
+  }
+
+  @Test
+  public void testFromValue() {
+    Assert.assertEquals(CodeBuildComputeType.XXLARGE, CodeBuildComputeType.fromValue("BUILD_GENERAL1_2XLARGE"));
+    Assert.assertNull(CodeBuildComputeType.fromValue("BUILD_LAMBDA_1GB"));
+  }
+
+  @Test
+  public void testHistoryPeaksDecaySlowly() {
+    CodeBuildJobHistory history = new CodeBuildJobHistory();
+    history.record("job", 1000, 10 * GIB, 4);
+    history.record("job", 1000, GIB, 1);
+
+    CodeBuildJobHistory.Stats stats = history.get("job");
+    Assert.assertEquals(8 * GIB, stats.getPeakMemoryBytes());
+    Assert.assertEquals(3.2, stats.getCpuCores(), 0.001);
+  }
+
+  @Test
+  public void testHistoryKeepsPeaksWhenAgentCannotTell() {
+    CodeBuildJobHistory history = new CodeBuildJobHistory();
+    history.record("job", 1000, 2 * GIB, 2);
+    history.record("job", 2000, -1, -1);
+
+    CodeBuildJobHistory.Stats stats = history.get("job");
+    Assert.assertEquals(2 * GIB, stats.getPeakMemoryBytes());
+    Assert.assertEquals(2, stats.getCpuCores(), 0.001);
+    Assert.assertEquals(1300, stats.getDurationMs());
+  }
+}
@@ -0,0 +1,66 @@
+package io.jenkins.plugins.codebuildcloud;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.jenkins.plugins.codebuildcloud.CodeBuildFairShare.Demand;
+
+public class CodeBuildFairShareTest {
+
+  @Test
+  public void testSharesByWeight() {
+    Map<String, Integer> alloc = CodeBuildFairShare.allocate(30, Arrays.asList(
+        new Demand("a", 0, 100, 0, 0, 2),
+        new Demand("b", 0, 100, 0, 0, 1)));
+    Assert.assertEquals(20, (int) alloc.get("a"));
+    Assert.assertEquals(10, (int) alloc.get("b"));
+  }
+
+  @Test
+  public void testNoisyLabelCannotStarveGuarantee() {
+    Map<String, Integer> alloc = CodeBuildFairShare.allocate(10, Arrays.asList(
+        new Demand("noisy", 10, 500, 0, 0, 10),
+        new Demand("quiet", 0, 5, 3, 0, 1)));
+    Assert.assertTrue(alloc.get("quiet") >= 3);
+    Assert.assertEquals(10, alloc.get("noisy") + alloc.get("quiet"));
+  }
+
+  @Test
+  public void testUnusedShareGoesToOthers() {
+    Map<String, Integer> alloc = CodeBuildFairShare.allocate(20, Arrays.asList(
+        new Demand("a", 0, 100, 0, 0, 1),
+        new Demand("b", 0, 2, 0, 0, 1)));
+    Assert.assertEquals(18, (int) alloc.get("a"));
+    Assert.assertEquals(2, (int) alloc.get("b"));
+  }
+
+  @Test
+  public void testMaxCapsLabel() {
+    Map<String, Integer> alloc = CodeBuildFairShare.allocate(20, Arrays.asList(
+        new Demand("capped", 0, 100, 0, 5, 10),
+        new Demand("other", 0, 100, 0, 0, 1)));
+    Assert.assertEquals(5, (int) alloc.get("capped"));
+    Assert.assertEquals(15, (int) alloc.get("other"));
+  }
+
+  @Test
+  public void testGuaranteeOnlyAsFarAsNeeded() {
+    Map<String, Integer> alloc = CodeBuildFairShare.allocate(10, Arrays.asList(
+        new Demand("idle", 0, 0, 5, 0, 1),
+        new Demand("busy", 0, 100, 0, 0, 1)));
+    Assert.assertEquals(0, (int) alloc.get("idle"));
+    Assert.assertEquals(10, (int) alloc.get("busy"));
+  }
+
+  @Test
+  public void testRoundingLeavesNothingUnused() {
+    Map<String, Integer> alloc = CodeBuildFairShare.allocate(10, Arrays.asList(
+        new Demand("a", 0, 100, 0, 0, 1),
+        new Demand("b", 0, 100, 0, 0, 1),
+        new Demand("c", 0, 100, 0, 0, 1)));
+    Assert.assertEquals(10, alloc.get("a") + alloc.get("b") + alloc.get("c"));
+  }
+}
@@ -0,0 +1,83 @@
+package io.jenkins.plugins.codebuildcloud;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.codebuild.model.AccountLimitExceededException;
+import com.amazonaws.services.codebuild.model.Build;
+import com.amazonaws.services.codebuild.model.BuildPhase;
+import com.amazonaws.services.codebuild.model.PhaseContext;
+
+public class CodeBuildLaunchFailuresTest {
+
+  private static AmazonServiceException serviceException(int status, String code) {
+    AmazonServiceException e = new AmazonServiceException("test");
+    e.setStatusCode(status);
+    e.setErrorCode(code);
+    return e;
+  }
+
+  private static Build build(String status, BuildPhase... phases) {
+    return new Build().withBuildStatus(status).withPhases(Arrays.asList(phases));
+  }
+
+  private static BuildPhase phase(String type, String status) {
+    return new BuildPhase().withPhaseType(type).withPhaseStatus(status);
+  }
+
+  @Test
+  public void testStartBuildErrors() {
+    Assert.assertEquals(CodeBuildLaunchFailures.Reason.START_BUILD_THROTTLED,
+        CodeBuildLaunchFailures.classify(serviceException(400, "ThrottlingException")));
+    Assert.assertEquals(CodeBuildLaunchFailures.Reason.START_BUILD_ERROR,
+        CodeBuildLaunchFailures.classify(serviceException(503, "ServiceUnavailable")));
+    Assert.assertEquals(CodeBuildLaunchFailures.Reason.START_BUILD_LIMITED,
+        CodeBuildLaunchFailures.classify(new AccountLimitExceededException("test")));
+    Assert.assertEquals(CodeBuildLaunchFailures.Reason.START_BUILD_REJECTED,
+        CodeBuildLaunchFailures.classify(serviceException(400, "InvalidInputException")));
+    Assert.assertEquals(CodeBuildLaunchFailures.Reason.CODEBUILD_UNAVAILABLE,
+        CodeBuildLaunchFailures.classify(new CodeBuildApiGuard.CircuitOpenException("us-east-1")));
+  }
+
+  @Test
+  public void testBuildFailures() {
+    Assert.assertEquals(CodeBuildLaunchFailures.Reason.BUILD_FAULT,
+        CodeBuildLaunchFailures.classify(build("FAULT", phase("SUBMITTED", "SUCCEEDED"))));
+    Assert.assertEquals(CodeBuildLaunchFailures.Reason.PROVISIONING_FAILED,
+        CodeBuildLaunchFailures.classify(build("FAILED", phase("QUEUED", "SUCCEEDED"),
+            phase("PROVISIONING", "FAILED"), phase("COMPLETED", null))));
+    Assert.assertEquals(CodeBuildLaunchFailures.Reason.BUILD_FAILED,
+        CodeBuildLaunchFailures.classify(build("FAILED", phase("PROVISIONING", "SUCCEEDED"),
+            phase("INSTALL", "FAILED"))));
+    Assert.assertEquals(CodeBuildLaunchFailures.Reason.BUILD_ENDED,
+        CodeBuildLaunchFailures.classify(build("STOPPED", phase("BUILD", "STOPPED"))));
+    Assert.assertEquals(CodeBuildLaunchFailures.Reason.BUILD_ENDED,
+        CodeBuildLaunchFailures.classify(build("SUCCEEDED", phase("BUILD", "SUCCEEDED"))));
+  }
+
+  @Test
+  public void testDescribeNamesTheFailedPhase() {
+    BuildPhase failed = phase("PROVISIONING", "FAILED")
+        .withContexts(new PhaseContext().withStatusCode("CLIENT_ERROR").withMessage("Unable to pull image"));
+    Assert.assertEquals("FAILED in PROVISIONING: CLIENT_ERROR: Unable to pull image",
+        CodeBuildLaunchFailures.describe(build("FAILED", phase("QUEUED", "SUCCEEDED"), failed)));
+  }
+
+  @Test
+  public void testRecentFailuresAreBounded() {
+    CodeBuildLaunchFailures failures = new CodeBuildLaunchFailures();
+    for (int i = 0; i < CodeBuildLaunchFailures.MAX_RECENT + 5; i++) {
+      failures.record(CodeBuildLaunchFailures.Reason.BUILD_FAULT, "agent" + i, "id" + i, "FAULT", "Relaunched");
+    }
+    failures.record(CodeBuildLaunchFailures.Reason.CONNECT_TIMEOUT, "last", "id", "timeout", "Gave up");
+
+    Assert.assertEquals(CodeBuildLaunchFailures.MAX_RECENT, failures.getRecent().size());
+    Assert.assertEquals("last", failures.getRecent().get(0).getAgentName());
+    Assert.assertEquals(CodeBuildLaunchFailures.Reason.BUILD_FAULT, failures.getCounts().get(0).getReason());
+    Assert.assertEquals(CodeBuildLaunchFailures.MAX_RECENT + 5, failures.getCounts().get(0).getCount());
+    Assert.assertEquals(1, failures.getCounts().get(1).getCount());
+  }
+}
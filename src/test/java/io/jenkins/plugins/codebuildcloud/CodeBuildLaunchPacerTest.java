@@ -0,0 +1,58 @@
+package io.jenkins.plugins.codebuildcloud;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CodeBuildLaunchPacerTest {
+
+  private final AtomicLong now = new AtomicLong();
+
+  @Test
+  public void testFirstBurstIsAdmitted() {
+    CodeBuildLaunchPacer pacer = new CodeBuildLaunchPacer(50, 60, now::get);
+    Assert.assertEquals(50, pacer.acquire("linux", 200));
+    Assert.assertEquals(0, pacer.acquire("linux", 200));
+  }
+
+  @Test
+  public void testRefillsOverTime() {
+    CodeBuildLaunchPacer pacer = new CodeBuildLaunchPacer(10, 60, now::get);
+    Assert.assertEquals(10, pacer.acquire("linux", 10));
+
+    now.addAndGet(TimeUnit.SECONDS.toNanos(3));
+    Assert.assertEquals(3, pacer.acquire("linux", 10));
+
+    // Never more than the burst size
+    now.addAndGet(TimeUnit.HOURS.toNanos(1));
+    Assert.assertEquals(10, pacer.acquire("linux", 100));
+  }
+
+  @Test
+  public void testLabelsArePacedSeparately() {
+    CodeBuildLaunchPacer pacer = new CodeBuildLaunchPacer(5, 60, now::get);
+    Assert.assertEquals(5, pacer.acquire("linux", 5));
+    Assert.assertEquals(5, pacer.acquire("arm", 5));
+  }
+
+  @Test
+  public void testSavingTheCloudDoesNotRefill() {
+    CodeBuildLaunchPacer pacer = CodeBuildLaunchPacer.forCloud("testSavingTheCloudDoesNotRefill", 5, 1);
+    Assert.assertEquals(5, pacer.acquire("linux", 5));
+
+    // A save builds a new cloud with the same name and new settings
+    pacer = CodeBuildLaunchPacer.forCloud("testSavingTheCloudDoesNotRefill", 20, 1);
+    Assert.assertEquals(0, pacer.acquire("linux", 5));
+  }
+
+  @Test
+  public void testLowerBurstCapsBuckets() {
+    CodeBuildLaunchPacer pacer = new CodeBuildLaunchPacer(10, 60, now::get);
+    Assert.assertEquals(1, pacer.acquire("linux", 1));
+
+    pacer.configure(3, 60);
+    Assert.assertEquals(3, pacer.acquire("linux", 10));
+  }
+}
@@ -0,0 +1,72 @@
+package io.jenkins.plugins.codebuildcloud;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.jenkins.plugins.codebuildcloud.CodeBuildLaunchPriority.Candidate;
+
+public class CodeBuildLaunchPriorityTest {
+
+  private static final long NOW = 10_000_000L;
+
+  @Test
+  public void testKeepsQueueOrder() {
+    List<Candidate> ordered = CodeBuildLaunchPriority.order(Arrays.asList(
+        new Candidate("pr", "pr-1", 1, NOW),
+        new Candidate("release", "release-1", 0, NOW),
+        new Candidate("pr", "pr-2", 2, NOW)), NOW, 60);
+    Assert.assertEquals("release-1", ordered.get(0).getJobKey());
+    Assert.assertEquals("pr-1", ordered.get(1).getJobKey());
+    Assert.assertEquals("pr-2", ordered.get(2).getJobKey());
+  }
+
+  @Test
+  public void testWaitingMovesItemsUp() {
+    // Ten minutes of waiting at a minute per position beats being five behind
+    List<Candidate> ordered = CodeBuildLaunchPriority.order(Arrays.asList(
+        new Candidate("release", "release-1", 0, NOW),
+        new Candidate("pr", "pr-old", 5, NOW - 600_000L)), NOW, 60);
+    Assert.assertEquals("pr-old", ordered.get(0).getJobKey());
+  }
+
+  @Test
+  public void testCountForLabelOnlyCountsWhatFits() {
+    List<Candidate> ordered = Arrays.asList(
+        new Candidate("release", "r1", 0, NOW),
+        new Candidate("pr", "p1", 1, NOW),
+        new Candidate("release", "r2", 2, NOW),
+        new Candidate("pr", "p2", 3, NOW));
+    Assert.assertEquals(2, CodeBuildLaunchPriority.countForLabel(ordered, "release", 3));
+    Assert.assertEquals(1, CodeBuildLaunchPriority.countForLabel(ordered, "pr", 3));
+    Assert.assertEquals(0, CodeBuildLaunchPriority.countForLabel(ordered, "pr", 0));
+  }
+
+  @Test
+  public void testUncoveredSkipsEachLabelsProvisioningExecutors() {
+    List<Candidate> ordered = Arrays.asList(
+        new Candidate("release", "r1", 0, NOW),
+        new Candidate("pr", "p1", 1, NOW),
+        new Candidate("release", "r2", 2, NOW),
+        new Candidate("pr", "p2", 3, NOW),
+        new Candidate("release", "r3", 4, NOW));
+    Map<String, Integer> provisioning = new HashMap<String, Integer>();
+    // One agent with two executors on the way for release, none for pr
+    provisioning.put("release", 2);
+    List<Candidate> uncovered = CodeBuildLaunchPriority.uncovered(ordered, provisioning);
+    Assert.assertEquals(3, uncovered.size());
+    Assert.assertEquals("p1", uncovered.get(0).getJobKey());
+    Assert.assertEquals("p2", uncovered.get(1).getJobKey());
+    Assert.assertEquals("r3", uncovered.get(2).getJobKey());
+    // pr keeps its place, release does not take it for the agent it already has
+    Assert.assertEquals(2, CodeBuildLaunchPriority.countForLabel(uncovered, "pr", 2));
+    Assert.assertEquals(0, CodeBuildLaunchPriority.countForLabel(uncovered, "release", 2));
+
+    Assert.assertEquals(ordered, CodeBuildLaunchPriority.uncovered(ordered, Collections.<String, Integer>emptyMap()));
+  }
+}
@@ -0,0 +1,81 @@
+package io.jenkins.plugins.codebuildcloud;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.amazonaws.services.codebuild.model.BuildPhase;
+
+public class CodeBuildLaunchStatsTest {
+
+  private static final long T0 = 1_700_000_000_000L;
+
+  private static BuildPhase phase(String type, long start) {
+    return new BuildPhase().withPhaseType(type).withStartTime(new Date(start));
+  }
+
+  @Test
+  public void testStepsLastUntilTheNextOne() {
+    CodeBuildLaunchTimeline timeline = new CodeBuildLaunchTimeline();
+    timeline.mark(CodeBuildLaunchTimeline.START_BUILD, T0);
+    // Reported again by every poll
+    timeline.markPhases(Arrays.asList(phase("SUBMITTED", T0 + 500), phase("QUEUED", T0 + 1000)));
+    timeline.markPhases(Arrays.asList(phase("SUBMITTED", T0 + 500), phase("QUEUED", T0 + 1000),
+        phase("PROVISIONING", T0 + 31000)));
+    timeline.mark(CodeBuildLaunchTimeline.AGENT_ONLINE, T0 + 61000);
+
+    List<CodeBuildLaunchTimeline.Step> steps = timeline.getSteps();
+    Assert.assertEquals(5, steps.size());
+    Assert.assertEquals(CodeBuildLaunchTimeline.START_BUILD, steps.get(0).getName());
+    Assert.assertEquals(500, steps.get(0).getDurationMs());
+    Assert.assertEquals(30000, steps.get(2).getDurationMs());
+    Assert.assertEquals(31000, steps.get(3).getOffsetMs());
+    Assert.assertEquals(-1, steps.get(4).getDurationMs());
+  }
+
+  @Test
+  public void testClockSkewNeverGivesNegativeSteps() {
+    CodeBuildLaunchTimeline timeline = new CodeBuildLaunchTimeline();
+    timeline.mark(CodeBuildLaunchTimeline.START_BUILD, T0);
+    timeline.markPhases(Arrays.asList(phase("SUBMITTED", T0 - 200)));
+    for (CodeBuildLaunchTimeline.Step s : timeline.getSteps()) {
+      Assert.assertTrue(s.getOffsetMs() >= 0);
+      Assert.assertTrue(s.getDurationMs() >= -1);
+    }
+  }
+
+  @Test
+  public void testStepsAreRecordedOnce() {
+    CodeBuildLaunchStats stats = new CodeBuildLaunchStats();
+    CodeBuildLaunchTimeline timeline = new CodeBuildLaunchTimeline();
+    timeline.mark(CodeBuildLaunchTimeline.START_BUILD, T0);
+    timeline.mark(CodeBuildLaunchTimeline.AGENT_ONLINE, T0 + 40000);
+    stats.record(timeline);
+    timeline.mark(CodeBuildLaunchTimeline.FIRST_TASK, T0 + 41000);
+    stats.record(timeline);
+
+    List<CodeBuildLaunchStats.Histogram> histograms = stats.getHistograms();
+    Assert.assertEquals(2, histograms.size());
+    Assert.assertEquals(CodeBuildLaunchTimeline.START_BUILD, histograms.get(0).getStep());
+    Assert.assertEquals(1, histograms.get(0).getCount());
+    Assert.assertEquals(40000, histograms.get(0).getMeanMs());
+    Assert.assertEquals(CodeBuildLaunchTimeline.AGENT_ONLINE, histograms.get(1).getStep());
+    Assert.assertEquals(1000, histograms.get(1).getMaxMs());
+  }
+
+  @Test
+  public void testPercentiles() {
+    CodeBuildLaunchStats.Histogram h = new CodeBuildLaunchStats.Histogram("test");
+    for (int i = 0; i < 9; i++) {
+      h.add(3000);
+    }
+    h.add(250000);
+    Assert.assertEquals(5000, h.getPercentileMs(0.5));
+    Assert.assertEquals(5000, h.getPercentileMs(0.9));
+    Assert.assertEquals(250000, h.getPercentileMs(0.99));
+    Assert.assertEquals(250000, h.getMaxMs());
+  }
+}
@@ -0,0 +1,92 @@
+package io.jenkins.plugins.codebuildcloud;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.mockito.ArgumentCaptor;
+
+import com.amazonaws.services.codebuild.model.Build;
+import com.amazonaws.services.codebuild.model.StartBuildRequest;
+import com.amazonaws.services.codebuild.model.StartBuildResult;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+public class CodeBuildLauncherTest {
+
+  @Rule
+  public JenkinsRule j = new JenkinsRule();
+
+  /** Launches through a client the test controls. */
+  static class TestCloud extends CodeBuildCloud {
+    private final transient CodeBuildClientWrapper testClient;
+
+    TestCloud(CodeBuildClientWrapper testClient) {
+      super("Test1", "hello", "", "us-east-1", "codebuild", 300,
+          "image", "CODEBUILD", "BUILD_GENERAL1_MEDIUM", "LINUX_CONTAINER", "spec", false, 10,
+          "", false, false, false, "", "", "", "https://jenkins.example.com/", false);
+      this.testClient = testClient;
+    }
+
+    @Override
+    public synchronized CodeBuildClientWrapper getClient() {
+      return testClient;
+    }
+
+    @Override
+    public CodeBuildClientWrapper getClient(@NonNull CodeBuildLaunchTarget target) {
+      return testClient;
+    }
+  }
+
+  private static Build queued(String buildId) {
+    return new Build().withId(buildId).withCurrentPhase("QUEUED");
+  }
+
+  @Test
+  public void testBuildThatStaysQueuedIsRespilled() throws Exception {
+    CodeBuildClientWrapper client = mock(CodeBuildClientWrapper.class);
+    when(client.isAvailable()).thenReturn(true);
+    when(client.getMaxConcurrentJobs(anyString())).thenReturn(10);
+    when(client.getStatusPoller()).thenReturn(new CodeBuildBuildStatusPoller(client));
+    AtomicInteger builds = new AtomicInteger();
+    when(client.startBuildAsync(any(StartBuildRequest.class))).thenAnswer(i -> CompletableFuture.completedFuture(
+        new StartBuildResult().withBuild(queued("build-" + builds.incrementAndGet()))));
+    // Never leaves the queue, so the poller reports no change after the first
+    when(client.batchGetBuildsAsync(anyList())).thenAnswer(i -> {
+      List<Build> list = new ArrayList<Build>();
+      for (Object id : (List<?>) i.getArgument(0)) {
+        list.add(queued((String) id));
+      }
+      return CompletableFuture.completedFuture(list);
+    });
+    when(client.stopBuildAsync(anyString())).thenReturn(CompletableFuture.completedFuture(null));
+
+    TestCloud cloud = new TestCloud(client);
+    cloud.setAdditionalProjects(Arrays.asList(new CodeBuildProjectTarget("other")));
+    cloud.setRespillQueueSeconds(1);
+
+    // Adding the node launches it
+    j.jenkins.addNode(new CodeBuildAgent("Test1.respill", cloud, new CodeBuildLauncher(cloud)));
+
+    verify(client, timeout(30_000)).stopBuildAsync("build-1");
+    ArgumentCaptor<StartBuildRequest> requests = ArgumentCaptor.forClass(StartBuildRequest.class);
+    verify(client, timeout(30_000).times(2)).startBuildAsync(requests.capture());
+    Assert.assertEquals("hello", requests.getAllValues().get(0).getProjectName());
+    Assert.assertEquals("other", requests.getAllValues().get(1).getProjectName());
+  }
+}
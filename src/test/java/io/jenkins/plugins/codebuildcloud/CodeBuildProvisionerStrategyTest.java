@@ -0,0 +1,104 @@
+package io.jenkins.plugins.codebuildcloud;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestExtension;
+
+import hudson.model.FreeStyleProject;
+import hudson.model.Label;
+import hudson.model.queue.CauseOfBlockage;
+import hudson.slaves.Cloud;
+import hudson.slaves.CloudProvisioningListener;
+import hudson.slaves.NodeProvisioner.PlannedNode;
+
+public class CodeBuildProvisionerStrategyTest {
+
+  @Rule
+  public JenkinsRule j = new JenkinsRule();
+
+  /** Records what it is asked to provision and launches nothing. */
+  static class TestCloud extends CodeBuildCloud {
+    final transient List<Integer> requested = new CopyOnWriteArrayList<Integer>();
+
+    TestCloud() {
+      super("Test1", "hello", "", "us-east-1", "codebuild", 300,
+          "image", "CODEBUILD", "BUILD_GENERAL1_MEDIUM", "LINUX_CONTAINER", "spec", false, 10,
+          "", false, false, false, "", "", "", "https://jenkins.example.com/", false);
+    }
+
+    @Override
+    public synchronized Collection<PlannedNode> provision(Label label, int excessWorkload) {
+      requested.add(excessWorkload);
+      return Collections.emptyList();
+    }
+  }
+
+  @TestExtension("testListenersCanVeto")
+  public static class Veto extends CloudProvisioningListener {
+    static final AtomicInteger asked = new AtomicInteger();
+
+    @Override
+    public CauseOfBlockage canProvision(Cloud cloud, Cloud.CloudState state, int numExecutors) {
+      asked.incrementAndGet();
+      return new CauseOfBlockage() {
+        @Override
+        public String getShortDescription() {
+          return "Vetoed by test";
+        }
+      };
+    }
+  }
+
+  private TestCloud queueJobs(int count) throws Exception {
+    Label label = j.jenkins.getLabel("codebuild");
+    for (int i = 0; i < count; i++) {
+      FreeStyleProject p = j.createFreeStyleProject();
+      p.setAssignedLabel(label);
+      p.scheduleBuild2(0);
+    }
+    j.jenkins.getQueue().maintain();
+
+    // Only added now, so nothing was provisioned before all jobs were queued
+    TestCloud cloud = new TestCloud();
+    j.jenkins.clouds.add(cloud);
+    return cloud;
+  }
+
+  private void reviewUntil(BooleanSupplier done) throws InterruptedException {
+    Label label = j.jenkins.getLabel("codebuild");
+    long deadline = System.currentTimeMillis() + 30_000;
+    while (!done.getAsBoolean()) {
+      Assert.assertTrue("Timed out waiting for provisioning", System.currentTimeMillis() < deadline);
+      label.nodeProvisioner.suggestReviewNow();
+      Thread.sleep(100);
+    }
+  }
+
+  @Test
+  public void testWholeQueueIsProvisionedOnFirstTick() throws Exception {
+    TestCloud cloud = queueJobs(3);
+
+    reviewUntil(() -> !cloud.requested.isEmpty());
+    Assert.assertEquals(3, (int) cloud.requested.get(0));
+  }
+
+  @Test
+  public void testListenersCanVeto() throws Exception {
+    TestCloud cloud = queueJobs(1);
+
+    reviewUntil(() -> Veto.asked.get() > 0);
+    // The tick that asked first is done once the next one asks
+    int asked = Veto.asked.get();
+    reviewUntil(() -> Veto.asked.get() > asked);
+    Assert.assertTrue(cloud.requested.isEmpty());
+  }
+}
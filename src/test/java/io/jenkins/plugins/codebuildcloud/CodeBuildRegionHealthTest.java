@@ -0,0 +1,74 @@
+package io.jenkins.plugins.codebuildcloud;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CodeBuildRegionHealthTest {
+
+  private static final String REGION = "us-east-1";
+  private static final int MAX_QUEUE_SECONDS = 120;
+
+  private final AtomicLong now = new AtomicLong();
+
+  @Test
+  public void testUnknownRegionIsHealthy() {
+    CodeBuildRegionHealth health = new CodeBuildRegionHealth(now::get);
+    Assert.assertFalse(health.isDegraded(REGION));
+  }
+
+  @Test
+  public void testLongQueueTimesDegradeUntilWellBelowThreshold() {
+    CodeBuildRegionHealth health = new CodeBuildRegionHealth(now::get);
+    health.recordQueueTime(REGION, 200, MAX_QUEUE_SECONDS);
+    Assert.assertTrue(health.isDegraded(REGION));
+
+    // Back under the threshold, but not under half of it yet
+    for (int i = 0; i < 3; i++) {
+      health.recordQueueTime(REGION, 10, MAX_QUEUE_SECONDS);
+    }
+    Assert.assertTrue(health.isDegraded(REGION));
+
+    health.recordQueueTime(REGION, 10, MAX_QUEUE_SECONDS);
+    Assert.assertFalse(health.isDegraded(REGION));
+  }
+
+  @Test
+  public void testErrorsDegrade() {
+    CodeBuildRegionHealth health = new CodeBuildRegionHealth(now::get);
+    health.recordError(REGION, MAX_QUEUE_SECONDS);
+    Assert.assertFalse(health.isDegraded(REGION));
+    health.recordError(REGION, MAX_QUEUE_SECONDS);
+    Assert.assertTrue(health.isDegraded(REGION));
+
+    health.recordSuccess(REGION, MAX_QUEUE_SECONDS);
+    Assert.assertTrue(health.isDegraded(REGION));
+    health.recordSuccess(REGION, MAX_QUEUE_SECONDS);
+    health.recordSuccess(REGION, MAX_QUEUE_SECONDS);
+    Assert.assertFalse(health.isDegraded(REGION));
+  }
+
+  @Test
+  public void testDegradedRegionIsProbedAgainWithoutSamples() {
+    CodeBuildRegionHealth health = new CodeBuildRegionHealth(now::get);
+    health.recordQueueTime(REGION, 600, MAX_QUEUE_SECONDS);
+    Assert.assertTrue(health.isDegraded(REGION));
+
+    now.addAndGet(TimeUnit.MINUTES.toNanos(6));
+    Assert.assertFalse(health.isDegraded(REGION));
+
+    // The probe starts from scratch
+    health.recordQueueTime(REGION, 30, MAX_QUEUE_SECONDS);
+    Assert.assertFalse(health.isDegraded(REGION));
+  }
+
+  @Test
+  public void testRegionsAreTrackedSeparately() {
+    CodeBuildRegionHealth health = new CodeBuildRegionHealth(now::get);
+    health.recordQueueTime(REGION, 600, MAX_QUEUE_SECONDS);
+    Assert.assertTrue(health.isDegraded(REGION));
+    Assert.assertFalse(health.isDegraded("us-west-2"));
+  }
+}